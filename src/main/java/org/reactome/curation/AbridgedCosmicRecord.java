@@ -3,13 +3,17 @@ package org.reactome.curation;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.reactome.curation.GenericRecord.getField;
+import static org.reactome.curation.GenericRecord.getLongField;
+import static org.reactome.curation.GenericRecord.getReleaseVersionField;
+import static org.reactome.curation.GenericRecord.getYesNoField;
 import static org.reactome.curation.ParseUtilities.*;
 
 public class AbridgedCosmicRecord {
-	private final static String EXPECTED_HEADER = String.join(
+	final static String EXPECTED_HEADER = String.join(
 		"\t",
 		"Protein",
 		"Mutation AA",
@@ -23,6 +27,8 @@ public class AbridgedCosmicRecord {
 		"ReleaseVersion",
 		"Mutation Description"
 	);
+	final static int FIELD_COUNT = EXPECTED_HEADER.split("\t").length;
+	final static int VARIANT_NAME_FIELD = 2;
 
 	private String mutationAA;
 	private Boolean highPriority;
@@ -30,19 +36,40 @@ public class AbridgedCosmicRecord {
 	private CommonAnnotations commonAnnotations;
 
 	private AbridgedCosmicRecord(String tsvLine) {
-		int currentField = 0;
-
-		String protein = getField(tsvLine, currentField++);
-		this.mutationAA = getField(tsvLine, currentField++);
-		String variantName = getField(tsvLine, currentField++);
-		String variantId = getField(tsvLine, currentField++);
-		long cosmicPubMedId = Long.parseLong(getField(tsvLine, currentField++));
-		Boolean isProteinInReactome = getBooleanFromYesNo(getField(tsvLine, currentField++));
-		Boolean areAnyVariantsAnnotated = getBooleanFromYesNo(getField(tsvLine, currentField++));
-		this.highPriority = getBooleanFromYesNo(getField(tsvLine, currentField++));
-		String status = getField(tsvLine, currentField++);
-		int releaseVersion = parseReleaseVersion(getField(tsvLine, currentField++));
-		this.mutationDescription = getField(tsvLine, currentField++);
+		this(
+			tsvLine,
+			getField(tsvLine, 0),
+			getField(tsvLine, 1),
+			getField(tsvLine, VARIANT_NAME_FIELD),
+			getField(tsvLine, 3),
+			getLongField(tsvLine, 4),
+			getYesNoField(tsvLine, 5),
+			getYesNoField(tsvLine, 6),
+			getYesNoField(tsvLine, 7),
+			getField(tsvLine, 8),
+			getReleaseVersionField(tsvLine, 9),
+			getField(tsvLine, 10)
+		);
+	}
+
+	// Takes values already decoded, as an off-heap arena slot holds them, so the line is not parsed again
+	AbridgedCosmicRecord(
+		String tsvLine,
+		String protein,
+		String mutationAA,
+		String variantName,
+		String variantId,
+		long cosmicPubMedId,
+		Boolean isProteinInReactome,
+		Boolean areAnyVariantsAnnotated,
+		Boolean highPriority,
+		String status,
+		int releaseVersion,
+		String mutationDescription
+	) {
+		this.mutationAA = mutationAA;
+		this.highPriority = highPriority;
+		this.mutationDescription = mutationDescription;
 
 		this.commonAnnotations = new CommonAnnotations.Builder()
 			.withRecordLine(tsvLine)
@@ -61,6 +88,21 @@ public class AbridgedCosmicRecord {
 		return GenericRecord.parseRecords(tsvFilePath, EXPECTED_HEADER, AbridgedCosmicRecord::new);
 	}
 
+	public static List<AbridgedCosmicRecord> parseAbridgedCosmicRecords(
+		String tsvFilePath, Predicate<String> variantNameFilter
+	) throws IOException {
+		return GenericRecord.parseRecords(
+			tsvFilePath,
+			EXPECTED_HEADER,
+			AbridgedCosmicRecord::new,
+			tsvLine -> variantNameFilter.test(getField(tsvLine, VARIANT_NAME_FIELD))
+		);
+	}
+
+	static AbridgedCosmicRecord parseAbridgedCosmicRecord(String tsvLine) {
+		return new AbridgedCosmicRecord(tsvLine);
+	}
+
 	public static List<String> getVariantIds(List<AbridgedCosmicRecord> abridgedCosmicRecords) {
 		return abridgedCosmicRecords
 			.stream()
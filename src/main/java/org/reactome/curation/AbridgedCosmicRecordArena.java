@@ -0,0 +1,520 @@
+package org.reactome.curation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.reactome.curation.GenericRecord.getField;
+import static org.reactome.curation.ParseUtilities.getBooleanFromYesNo;
+import static org.reactome.curation.ParseUtilities.parseLong;
+import static org.reactome.curation.ParseUtilities.parseReleaseVersion;
+
+/**
+ * Abridged cosmic records packed into direct byte buffers and grouped by variant name, so millions of records cost a
+ * handful of heap objects instead of a record, its annotations and its lists each.  The original line bytes are kept
+ * in line chunks and every record has a fixed size slot in a record chunk holding its parsed values and the offsets
+ * of its text fields.  Records of the same variant name are chained in file order from an off-heap hash table.
+ */
+public class AbridgedCosmicRecordArena {
+	private static final int RECORDS_PER_CHUNK = 1 << 16;
+	private static final int LINE_CHUNK_SIZE = 1 << 26;
+	private static final int INITIAL_GROUP_TABLE_CAPACITY = 1 << 12;
+
+	private static final int RECORD_SLOT_SIZE = 80;
+	private static final int LINE_CHUNK = 0;
+	private static final int LINE_OFFSET = 4;
+	private static final int LINE_LENGTH = 8;
+	private static final int PROTEIN = 12;
+	private static final int MUTATION_AA = 20;
+	private static final int VARIANT_NAME = 28;
+	private static final int VARIANT_ID = 36;
+	private static final int STATUS = 44;
+	private static final int MUTATION_DESCRIPTION = 52;
+	private static final int COSMIC_PUBMED_ID = 60;
+	private static final int RELEASE_VERSION = 68;
+	private static final int NEXT_IN_GROUP = 72;
+	private static final int PROTEIN_IN_REACTOME = 76;
+	private static final int ANY_VARIANTS_ANNOTATED = 77;
+	private static final int HIGH_PRIORITY = 78;
+
+	// Each group table bucket holds the variant name hash and the first and last record of the group (plus one, so
+	// zero marks an empty bucket)
+	private static final int GROUP_BUCKET_SIZE = 3 * Integer.BYTES;
+	private static final int NO_RECORD = -1;
+
+	private static final byte NULL_BOOLEAN = 0;
+	private static final byte TRUE_BOOLEAN = 1;
+	private static final byte FALSE_BOOLEAN = 2;
+
+	private final List<ByteBuffer> recordChunks = new ArrayList<>();
+	private final List<ByteBuffer> lineChunks = new ArrayList<>();
+	private int recordCount;
+
+	private ByteBuffer groupTable = ByteBuffer.allocateDirect(INITIAL_GROUP_TABLE_CAPACITY * GROUP_BUCKET_SIZE);
+	private int groupTableCapacity = INITIAL_GROUP_TABLE_CAPACITY;
+	private int groupCount;
+
+	// Each merge thread keeps the last group it materialized, as the threads look up different variant names at once
+	private final ThreadLocal<MaterializedGroup> lastMaterializedGroup = new ThreadLocal<>();
+
+	private AbridgedCosmicRecordArena() {
+
+	}
+
+	public static AbridgedCosmicRecordArena parseAbridgedCosmicRecordArena(
+		String tsvFilePath, Predicate<String> variantNameFilter
+	) throws IOException {
+		MergeEvents.InputFileParsed inputFileParsedEvent = new MergeEvents.InputFileParsed();
+		inputFileParsedEvent.begin();
+
+		AbridgedCosmicRecordArena arena = new AbridgedCosmicRecordArena();
+
+		try (BufferedReader tsvFileReader = Files.newBufferedReader(Paths.get(tsvFilePath))) {
+			GenericRecord.checkHeader(tsvFilePath, AbridgedCosmicRecord.EXPECTED_HEADER, tsvFileReader.readLine());
+
+			String tsvLine;
+			while ((tsvLine = tsvFileReader.readLine()) != null) {
+				if (variantNameFilter.test(getField(tsvLine, AbridgedCosmicRecord.VARIANT_NAME_FIELD))) {
+					arena.addRecord(tsvLine);
+				}
+			}
+		}
+
+		inputFileParsedEvent.commit(tsvFilePath, arena.getRecordCount());
+		return arena;
+	}
+
+	public int getRecordCount() {
+		return this.recordCount;
+	}
+
+	public int getVariantNameCount() {
+		return this.groupCount;
+	}
+
+	/**
+	 * Returns a view positioned on the first record with the variant name, or null if there is none.  The view is
+	 * moved through the rest of the group with {@link RecordView#next()}.
+	 */
+	public RecordView getRecordView(String variantName) {
+		int firstRecord = getFirstRecordInGroup(variantName.getBytes(StandardCharsets.UTF_8));
+		return firstRecord != NO_RECORD ? new RecordView(firstRecord) : null;
+	}
+
+	/**
+	 * A read-only map view which materializes the abridged cosmic records of a variant name only when they are looked
+	 * up, so the merge can run against the arena unchanged.
+	 */
+	public Map<String, List<AbridgedCosmicRecord>> asVariantNameToAbridgedCosmicRecords() {
+		return new AbstractMap<String, List<AbridgedCosmicRecord>>() {
+			@Override
+			public List<AbridgedCosmicRecord> get(Object variantName) {
+				return variantName instanceof String ? getAbridgedCosmicRecords((String) variantName) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object variantName) {
+				return get(variantName) != null;
+			}
+
+			@Override
+			public int size() {
+				return groupCount;
+			}
+
+			@Override
+			public Set<Entry<String, List<AbridgedCosmicRecord>>> entrySet() {
+				return new AbstractSet<Entry<String, List<AbridgedCosmicRecord>>>() {
+					@Override
+					public Iterator<Entry<String, List<AbridgedCosmicRecord>>> iterator() {
+						return getGroupEntries();
+					}
+
+					@Override
+					public int size() {
+						return groupCount;
+					}
+				};
+			}
+		};
+	}
+
+	// The merge looks a variant name up several times in a row (getOrDefault and then each of its records), so the
+	// last group materialized is kept rather than decoded again for each lookup
+	private List<AbridgedCosmicRecord> getAbridgedCosmicRecords(String variantName) {
+		MaterializedGroup materializedGroup = this.lastMaterializedGroup.get();
+		if (materializedGroup != null && materializedGroup.variantName.equals(variantName)) {
+			return materializedGroup.abridgedCosmicRecords;
+		}
+
+		List<AbridgedCosmicRecord> abridgedCosmicRecords = null;
+		RecordView recordView = getRecordView(variantName);
+		if (recordView != null) {
+			abridgedCosmicRecords = new ArrayList<>();
+			do {
+				abridgedCosmicRecords.add(recordView.toAbridgedCosmicRecord());
+			} while (recordView.next());
+			abridgedCosmicRecords = Collections.unmodifiableList(abridgedCosmicRecords);
+		}
+
+		this.lastMaterializedGroup.set(new MaterializedGroup(variantName, abridgedCosmicRecords));
+		return abridgedCosmicRecords;
+	}
+
+	private Iterator<Map.Entry<String, List<AbridgedCosmicRecord>>> getGroupEntries() {
+		return new Iterator<Map.Entry<String, List<AbridgedCosmicRecord>>>() {
+			private int bucket = findNextGroupBucket(0);
+
+			@Override
+			public boolean hasNext() {
+				return bucket < groupTableCapacity;
+			}
+
+			@Override
+			public Map.Entry<String, List<AbridgedCosmicRecord>> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				String variantName = new RecordView(getGroupHead(bucket)).getVariantName();
+				bucket = findNextGroupBucket(bucket + 1);
+
+				return new AbstractMap.SimpleImmutableEntry<>(variantName, getAbridgedCosmicRecords(variantName));
+			}
+		};
+	}
+
+	private int findNextGroupBucket(int bucket) {
+		while (bucket < groupTableCapacity && getGroupHead(bucket) == NO_RECORD) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	private void addRecord(String tsvLine) {
+		byte[] lineBytes = tsvLine.getBytes(StandardCharsets.UTF_8);
+		int[] fieldBounds = getFieldBounds(lineBytes);
+
+		// The byte decoders give the same errors as AbridgedCosmicRecord does for malformed lines
+		long cosmicPubMedId = parseLong(lineBytes, fieldBounds[2 * 4], fieldBounds[2 * 4 + 1]);
+		Boolean isProteinInReactome = getBooleanFromYesNo(lineBytes, fieldBounds[2 * 5], fieldBounds[2 * 5 + 1]);
+		Boolean areAnyVariantsAnnotated = getBooleanFromYesNo(lineBytes, fieldBounds[2 * 6], fieldBounds[2 * 6 + 1]);
+		Boolean highPriority = getBooleanFromYesNo(lineBytes, fieldBounds[2 * 7], fieldBounds[2 * 7 + 1]);
+		int releaseVersion = parseReleaseVersion(lineBytes, fieldBounds[2 * 9], fieldBounds[2 * 9 + 1]);
+
+		ByteBuffer lineChunk = getLineChunkWithSpace(lineBytes.length);
+		int lineOffset = lineChunk.position();
+		lineChunk.put(lineBytes);
+
+		int record = recordCount++;
+		if (record / RECORDS_PER_CHUNK == recordChunks.size()) {
+			recordChunks.add(ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SLOT_SIZE));
+		}
+		ByteBuffer recordChunk = getRecordChunk(record);
+		int slot = getSlot(record);
+
+		recordChunk.putInt(slot + LINE_CHUNK, lineChunks.size() - 1);
+		recordChunk.putInt(slot + LINE_OFFSET, lineOffset);
+		recordChunk.putInt(slot + LINE_LENGTH, lineBytes.length);
+		putFieldBounds(recordChunk, slot + PROTEIN, fieldBounds, 0);
+		putFieldBounds(recordChunk, slot + MUTATION_AA, fieldBounds, 1);
+		putFieldBounds(recordChunk, slot + VARIANT_NAME, fieldBounds, 2);
+		putFieldBounds(recordChunk, slot + VARIANT_ID, fieldBounds, 3);
+		putFieldBounds(recordChunk, slot + STATUS, fieldBounds, 8);
+		putFieldBounds(recordChunk, slot + MUTATION_DESCRIPTION, fieldBounds, 10);
+		recordChunk.putLong(slot + COSMIC_PUBMED_ID, cosmicPubMedId);
+		recordChunk.putInt(slot + RELEASE_VERSION, releaseVersion);
+		recordChunk.putInt(slot + NEXT_IN_GROUP, NO_RECORD);
+		recordChunk.put(slot + PROTEIN_IN_REACTOME, toByte(isProteinInReactome));
+		recordChunk.put(slot + ANY_VARIANTS_ANNOTATED, toByte(areAnyVariantsAnnotated));
+		recordChunk.put(slot + HIGH_PRIORITY, toByte(highPriority));
+
+		addToGroup(record, lineBytes, fieldBounds[2 * 2], fieldBounds[2 * 2 + 1]);
+	}
+
+	// Start and end of each of the record's fields in the line bytes, with fields missing from the line left empty
+	private static int[] getFieldBounds(byte[] lineBytes) {
+		int[] fieldBounds = new int[2 * AbridgedCosmicRecord.FIELD_COUNT];
+		Arrays.fill(fieldBounds, lineBytes.length);
+
+		int field = 0;
+		int fieldStart = 0;
+		for (int byteIndex = 0; byteIndex <= lineBytes.length && field < AbridgedCosmicRecord.FIELD_COUNT; byteIndex++) {
+			if (byteIndex == lineBytes.length || lineBytes[byteIndex] == '\t') {
+				fieldBounds[2 * field] = fieldStart;
+				fieldBounds[2 * field + 1] = byteIndex;
+				fieldStart = byteIndex + 1;
+				field++;
+			}
+		}
+		return fieldBounds;
+	}
+
+	private static void putFieldBounds(ByteBuffer recordChunk, int slotPosition, int[] fieldBounds, int field) {
+		recordChunk.putInt(slotPosition, fieldBounds[2 * field]);
+		recordChunk.putInt(slotPosition + Integer.BYTES, fieldBounds[2 * field + 1]);
+	}
+
+	private ByteBuffer getLineChunkWithSpace(int lineLength) {
+		ByteBuffer lineChunk = lineChunks.isEmpty() ? null : lineChunks.get(lineChunks.size() - 1);
+		if (lineChunk == null || lineChunk.remaining() < lineLength) {
+			lineChunk = ByteBuffer.allocateDirect(Math.max(LINE_CHUNK_SIZE, lineLength));
+			lineChunks.add(lineChunk);
+		}
+		return lineChunk;
+	}
+
+	private void addToGroup(int record, byte[] lineBytes, int variantNameStart, int variantNameEnd) {
+		int variantNameHash = hash(lineBytes, variantNameStart, variantNameEnd);
+		int bucket = findGroupBucket(variantNameHash, lineBytes, variantNameStart, variantNameEnd);
+
+		if (getGroupHead(bucket) == NO_RECORD) {
+			setGroupBucket(bucket, variantNameHash, record, record);
+			groupCount++;
+
+			if (groupCount * 4 > groupTableCapacity * 3) {
+				growGroupTable();
+			}
+		} else {
+			int lastRecord = getGroupTail(bucket);
+			getRecordChunk(lastRecord).putInt(getSlot(lastRecord) + NEXT_IN_GROUP, record);
+			setGroupBucket(bucket, variantNameHash, getGroupHead(bucket), record);
+		}
+	}
+
+	private int getFirstRecordInGroup(byte[] variantNameBytes) {
+		int bucket = findGroupBucket(
+			hash(variantNameBytes, 0, variantNameBytes.length), variantNameBytes, 0, variantNameBytes.length
+		);
+		return getGroupHead(bucket);
+	}
+
+	// Linear probing for the bucket of the variant name, or the empty bucket where it would go
+	private int findGroupBucket(int variantNameHash, byte[] bytes, int start, int end) {
+		int bucket = Math.floorMod(variantNameHash, groupTableCapacity);
+
+		while (getGroupHead(bucket) != NO_RECORD) {
+			if (getGroupHash(bucket) == variantNameHash && variantNameEquals(getGroupHead(bucket), bytes, start, end)) {
+				return bucket;
+			}
+			bucket = (bucket + 1) % groupTableCapacity;
+		}
+		return bucket;
+	}
+
+	private void growGroupTable() {
+		ByteBuffer oldGroupTable = groupTable;
+		int oldGroupTableCapacity = groupTableCapacity;
+
+		groupTableCapacity = oldGroupTableCapacity * 2;
+		groupTable = ByteBuffer.allocateDirect(groupTableCapacity * GROUP_BUCKET_SIZE);
+
+		for (int oldBucket = 0; oldBucket < oldGroupTableCapacity; oldBucket++) {
+			int oldPosition = oldBucket * GROUP_BUCKET_SIZE;
+			if (oldGroupTable.getInt(oldPosition + Integer.BYTES) == 0) {
+				continue;
+			}
+
+			int variantNameHash = oldGroupTable.getInt(oldPosition);
+			int bucket = Math.floorMod(variantNameHash, groupTableCapacity);
+			while (getGroupHead(bucket) != NO_RECORD) {
+				bucket = (bucket + 1) % groupTableCapacity;
+			}
+			groupTable.putInt(bucket * GROUP_BUCKET_SIZE, variantNameHash);
+			groupTable.putInt(bucket * GROUP_BUCKET_SIZE + Integer.BYTES, oldGroupTable.getInt(oldPosition + Integer.BYTES));
+			groupTable.putInt(
+				bucket * GROUP_BUCKET_SIZE + 2 * Integer.BYTES, oldGroupTable.getInt(oldPosition + 2 * Integer.BYTES)
+			);
+		}
+	}
+
+	private int getGroupHash(int bucket) {
+		return groupTable.getInt(bucket * GROUP_BUCKET_SIZE);
+	}
+
+	private int getGroupHead(int bucket) {
+		return groupTable.getInt(bucket * GROUP_BUCKET_SIZE + Integer.BYTES) - 1;
+	}
+
+	private int getGroupTail(int bucket) {
+		return groupTable.getInt(bucket * GROUP_BUCKET_SIZE + 2 * Integer.BYTES) - 1;
+	}
+
+	private void setGroupBucket(int bucket, int variantNameHash, int firstRecord, int lastRecord) {
+		groupTable.putInt(bucket * GROUP_BUCKET_SIZE, variantNameHash);
+		groupTable.putInt(bucket * GROUP_BUCKET_SIZE + Integer.BYTES, firstRecord + 1);
+		groupTable.putInt(bucket * GROUP_BUCKET_SIZE + 2 * Integer.BYTES, lastRecord + 1);
+	}
+
+	private boolean variantNameEquals(int record, byte[] bytes, int start, int end) {
+		ByteBuffer recordChunk = getRecordChunk(record);
+		int slot = getSlot(record);
+		int variantNameStart = recordChunk.getInt(slot + VARIANT_NAME);
+		int variantNameEnd = recordChunk.getInt(slot + VARIANT_NAME + Integer.BYTES);
+
+		if (variantNameEnd - variantNameStart != end - start) {
+			return false;
+		}
+
+		ByteBuffer lineChunk = lineChunks.get(recordChunk.getInt(slot + LINE_CHUNK));
+		int lineOffset = recordChunk.getInt(slot + LINE_OFFSET);
+		for (int byteIndex = 0; byteIndex < end - start; byteIndex++) {
+			if (lineChunk.get(lineOffset + variantNameStart + byteIndex) != bytes[start + byteIndex]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(byte[] bytes, int start, int end) {
+		int hash = 0;
+		for (int byteIndex = start; byteIndex < end; byteIndex++) {
+			hash = 31 * hash + bytes[byteIndex];
+		}
+		return hash;
+	}
+
+	private ByteBuffer getRecordChunk(int record) {
+		return recordChunks.get(record / RECORDS_PER_CHUNK);
+	}
+
+	private static int getSlot(int record) {
+		return (record % RECORDS_PER_CHUNK) * RECORD_SLOT_SIZE;
+	}
+
+	private static byte toByte(Boolean value) {
+		if (value == null) {
+			return NULL_BOOLEAN;
+		}
+		return value ? TRUE_BOOLEAN : FALSE_BOOLEAN;
+	}
+
+	private static Boolean toBoolean(byte value) {
+		if (value == NULL_BOOLEAN) {
+			return null;
+		}
+		return value == TRUE_BOOLEAN;
+	}
+
+	/**
+	 * A flyweight over one record slot of the arena.  The same view is moved from record to record, so getters decode
+	 * only the field asked for and nothing else is kept on the heap.
+	 */
+	public class RecordView {
+		private int record;
+
+		private RecordView(int record) {
+			this.record = record;
+		}
+
+		public boolean next() {
+			int nextRecord = slotInt(NEXT_IN_GROUP);
+			if (nextRecord == NO_RECORD) {
+				return false;
+			}
+
+			this.record = nextRecord;
+			return true;
+		}
+
+		public AbridgedCosmicRecord toAbridgedCosmicRecord() {
+			return new AbridgedCosmicRecord(
+				toString(),
+				getProtein(),
+				getMutationAA(),
+				getVariantName(),
+				getVariantId(),
+				getCosmicPubMedId(),
+				proteinIsInReactome(),
+				anyVariantsAreAnnotated(),
+				isHighPriority(),
+				getStatus(),
+				getReleaseVersion(),
+				getMutationDescription()
+			);
+		}
+
+		@Override
+		public String toString() {
+			return decode(0, slotInt(LINE_LENGTH));
+		}
+
+		public String getProtein() {
+			return decodeField(PROTEIN);
+		}
+
+		public String getMutationAA() {
+			return decodeField(MUTATION_AA);
+		}
+
+		public String getVariantName() {
+			return decodeField(VARIANT_NAME);
+		}
+
+		public String getVariantId() {
+			return decodeField(VARIANT_ID);
+		}
+
+		public long getCosmicPubMedId() {
+			return getRecordChunk(record).getLong(getSlot(record) + COSMIC_PUBMED_ID);
+		}
+
+		public Boolean proteinIsInReactome() {
+			return toBoolean(getRecordChunk(record).get(getSlot(record) + PROTEIN_IN_REACTOME));
+		}
+
+		public Boolean anyVariantsAreAnnotated() {
+			return toBoolean(getRecordChunk(record).get(getSlot(record) + ANY_VARIANTS_ANNOTATED));
+		}
+
+		public Boolean isHighPriority() {
+			return toBoolean(getRecordChunk(record).get(getSlot(record) + HIGH_PRIORITY));
+		}
+
+		public String getStatus() {
+			return decodeField(STATUS);
+		}
+
+		public int getReleaseVersion() {
+			return slotInt(RELEASE_VERSION);
+		}
+
+		public String getMutationDescription() {
+			return decodeField(MUTATION_DESCRIPTION);
+		}
+
+		private int slotInt(int slotPosition) {
+			return getRecordChunk(record).getInt(getSlot(record) + slotPosition);
+		}
+
+		private String decodeField(int slotPosition) {
+			return decode(slotInt(slotPosition), slotInt(slotPosition + Integer.BYTES));
+		}
+
+		private String decode(int start, int end) {
+			ByteBuffer lineChunk = lineChunks.get(slotInt(LINE_CHUNK));
+			int lineOffset = slotInt(LINE_OFFSET);
+
+			byte[] bytes = new byte[end - start];
+			for (int byteIndex = 0; byteIndex < bytes.length; byteIndex++) {
+				bytes[byteIndex] = lineChunk.get(lineOffset + start + byteIndex);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	private static class MaterializedGroup {
+		private final String variantName;
+		private final List<AbridgedCosmicRecord> abridgedCosmicRecords;
+
+		private MaterializedGroup(String variantName, List<AbridgedCosmicRecord> abridgedCosmicRecords) {
+			this.variantName = variantName;
+			this.abridgedCosmicRecords = abridgedCosmicRecords;
+		}
+	}
+}
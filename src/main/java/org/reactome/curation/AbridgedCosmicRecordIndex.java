@@ -0,0 +1,205 @@
+package org.reactome.curation;
+
+import java.util.*;
+
+/**
+ * An immutable index of abridged cosmic records by variant name.  The records are kept in one array sorted by the
+ * hash and then the value of their variant name, and each distinct variant name has an offset into that array, so the
+ * index costs three arrays rather than a map node and a list for every variant name.  Looking up a variant name that
+ * is not in the index neither allocates nor adds anything.
+ */
+public class AbridgedCosmicRecordIndex {
+	private String[] variantNames;
+	private int[] variantNameHashes;
+	private int[] recordOffsets;
+	private AbridgedCosmicRecord[] abridgedCosmicRecords;
+
+	private AbridgedCosmicRecordIndex(
+		String[] variantNames,
+		int[] variantNameHashes,
+		int[] recordOffsets,
+		AbridgedCosmicRecord[] abridgedCosmicRecords
+	) {
+		this.variantNames = variantNames;
+		this.variantNameHashes = variantNameHashes;
+		this.recordOffsets = recordOffsets;
+		this.abridgedCosmicRecords = abridgedCosmicRecords;
+	}
+
+	public static AbridgedCosmicRecordIndex indexAbridgedCosmicRecords(
+		List<AbridgedCosmicRecord> abridgedCosmicRecordList
+	) {
+		AbridgedCosmicRecord[] abridgedCosmicRecords =
+			abridgedCosmicRecordList.toArray(new AbridgedCosmicRecord[0]);
+
+		// The sort is stable, so the records of each variant name stay in file order
+		Arrays.sort(
+			abridgedCosmicRecords,
+			Comparator
+				.comparingInt((AbridgedCosmicRecord abr) -> abr.getVariantName().hashCode())
+				.thenComparing(AbridgedCosmicRecord::getVariantName)
+		);
+
+		int variantNameCount = 0;
+		for (int recordIndex = 0; recordIndex < abridgedCosmicRecords.length; recordIndex++) {
+			if (isFirstOfVariantName(abridgedCosmicRecords, recordIndex)) {
+				variantNameCount++;
+			}
+		}
+
+		String[] variantNames = new String[variantNameCount];
+		int[] variantNameHashes = new int[variantNameCount];
+		int[] recordOffsets = new int[variantNameCount + 1];
+		int variantNameIndex = 0;
+		for (int recordIndex = 0; recordIndex < abridgedCosmicRecords.length; recordIndex++) {
+			if (isFirstOfVariantName(abridgedCosmicRecords, recordIndex)) {
+				variantNames[variantNameIndex] = abridgedCosmicRecords[recordIndex].getVariantName();
+				variantNameHashes[variantNameIndex] = variantNames[variantNameIndex].hashCode();
+				recordOffsets[variantNameIndex] = recordIndex;
+				variantNameIndex++;
+			}
+		}
+		recordOffsets[variantNameCount] = abridgedCosmicRecords.length;
+
+		return new AbridgedCosmicRecordIndex(variantNames, variantNameHashes, recordOffsets, abridgedCosmicRecords);
+	}
+
+	public int getVariantNameCount() {
+		return this.variantNames.length;
+	}
+
+	public int getRecordCount(String variantName) {
+		int variantNameIndex = findVariantName(variantName);
+		return variantNameIndex != -1 ? getRecordCount(variantNameIndex) : 0;
+	}
+
+	public List<AbridgedCosmicRecord> getAbridgedCosmicRecords(String variantName) {
+		int variantNameIndex = findVariantName(variantName);
+		return variantNameIndex != -1 ? getAbridgedCosmicRecords(variantNameIndex) : null;
+	}
+
+	// Read only, and the lists it gives are views of the index
+	public Map<String, List<AbridgedCosmicRecord>> asVariantNameToAbridgedCosmicRecords() {
+		return new AbstractMap<String, List<AbridgedCosmicRecord>>() {
+			@Override
+			public List<AbridgedCosmicRecord> get(Object variantName) {
+				return variantName instanceof String ? getAbridgedCosmicRecords((String) variantName) : null;
+			}
+
+			@Override
+			public List<AbridgedCosmicRecord> getOrDefault(Object variantName, List<AbridgedCosmicRecord> defaultValue) {
+				List<AbridgedCosmicRecord> abridgedCosmicRecords = get(variantName);
+				return abridgedCosmicRecords != null ? abridgedCosmicRecords : defaultValue;
+			}
+
+			@Override
+			public boolean containsKey(Object variantName) {
+				return variantName instanceof String && findVariantName((String) variantName) != -1;
+			}
+
+			@Override
+			public int size() {
+				return getVariantNameCount();
+			}
+
+			@Override
+			public Set<Entry<String, List<AbridgedCosmicRecord>>> entrySet() {
+				return new AbstractSet<Entry<String, List<AbridgedCosmicRecord>>>() {
+					@Override
+					public Iterator<Entry<String, List<AbridgedCosmicRecord>>> iterator() {
+						return new Iterator<Entry<String, List<AbridgedCosmicRecord>>>() {
+							private int variantNameIndex = 0;
+
+							@Override
+							public boolean hasNext() {
+								return variantNameIndex < getVariantNameCount();
+							}
+
+							@Override
+							public Entry<String, List<AbridgedCosmicRecord>> next() {
+								if (!hasNext()) {
+									throw new NoSuchElementException();
+								}
+
+								Entry<String, List<AbridgedCosmicRecord>> entry = new SimpleImmutableEntry<>(
+									variantNames[variantNameIndex], getAbridgedCosmicRecords(variantNameIndex)
+								);
+								variantNameIndex++;
+								return entry;
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return getVariantNameCount();
+					}
+				};
+			}
+		};
+	}
+
+	// Compares the hashes first, so variant names are only compared when their hashes are equal
+	private int findVariantName(String variantName) {
+		int variantNameHash = variantName.hashCode();
+
+		int low = 0;
+		int high = this.variantNames.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = this.variantNameHashes[middle] != variantNameHash ?
+				Integer.compare(this.variantNameHashes[middle], variantNameHash) :
+				this.variantNames[middle].compareTo(variantName);
+
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	private int getRecordCount(int variantNameIndex) {
+		return this.recordOffsets[variantNameIndex + 1] - this.recordOffsets[variantNameIndex];
+	}
+
+	private List<AbridgedCosmicRecord> getAbridgedCosmicRecords(int variantNameIndex) {
+		int recordOffset = this.recordOffsets[variantNameIndex];
+		int recordCount = getRecordCount(variantNameIndex);
+
+		return new RecordRange(recordOffset, recordCount);
+	}
+
+	private static boolean isFirstOfVariantName(AbridgedCosmicRecord[] abridgedCosmicRecords, int recordIndex) {
+		return recordIndex == 0 ||
+			!abridgedCosmicRecords[recordIndex].getVariantName().equals(
+				abridgedCosmicRecords[recordIndex - 1].getVariantName()
+			);
+	}
+
+	private class RecordRange extends AbstractList<AbridgedCosmicRecord> implements RandomAccess {
+		private int recordOffset;
+		private int recordCount;
+
+		private RecordRange(int recordOffset, int recordCount) {
+			this.recordOffset = recordOffset;
+			this.recordCount = recordCount;
+		}
+
+		@Override
+		public AbridgedCosmicRecord get(int index) {
+			if (index < 0 || index >= this.recordCount) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.recordCount);
+			}
+			return abridgedCosmicRecords[this.recordOffset + index];
+		}
+
+		@Override
+		public int size() {
+			return this.recordCount;
+		}
+	}
+}
@@ -0,0 +1,407 @@
+package org.reactome.curation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.reactome.curation.GenericRecord.getField;
+
+/**
+ * Keeps the ingested abridged cosmic lines on disk grouped by variant name, with an index giving each variant's group
+ * position and a hash of its lines.  Ingesting a new abridged cosmic file hashes each variant's lines in one streaming
+ * pass and compares the hashes with the index, then reads the lines of only the added and changed variants in a
+ * second pass, appends their groups and drops the groups of removed variants from the index.  The variant names
+ * affected are written to affected-variants.txt.  The records file is rewritten once more than half of it is groups
+ * no longer indexed, and each ingest replaces the index in one move, so a failed one leaves the last ingest in place.
+ * Lines in the records file end with '\n' whatever the platform, so a store can be moved between hosts.
+ * Merges read the groups of only the curated variants with -DvariantAnnotation.cosmicStoreDir=&lt;store directory&gt;,
+ * and are limited to the affected variants with -DvariantAnnotation.affectedVariantsFile=&lt;affected-variants.txt&gt;.
+ */
+public class AbridgedCosmicRecordStore {
+	static final String cosmicStoreDirProperty = "variantAnnotation.cosmicStoreDir";
+	static final String affectedVariantsFile = "affected-variants.txt";
+
+	private static final String indexFile = "groups.idx";
+	private static final String recordsFilePrefix = "records-";
+	private static final String recordsFileExtension = ".tsv";
+	private static final long batchBytes = 64L * 1024 * 1024;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private Path storeDir;
+	private int recordsFileGeneration;
+	private long recordsBytes;
+	private SortedMap<String, VariantGroup> variantNameToGroup = new TreeMap<>();
+
+	private AbridgedCosmicRecordStore(Path storeDir) {
+		this.storeDir = storeDir;
+	}
+
+	public static void ingest(Path abridgedCosmicFilePath) throws IOException {
+		AbridgedCosmicRecordStore store = open(Paths.get(System.getProperty(cosmicStoreDirProperty, "cosmic-store")));
+		Files.createDirectories(store.storeDir);
+
+		Map<String, VariantGroup> newVariantNameToGroup = hashVariantGroups(abridgedCosmicFilePath);
+
+		SortedSet<String> addedVariantNames = new TreeSet<>();
+		SortedSet<String> changedVariantNames = new TreeSet<>();
+		for (Map.Entry<String, VariantGroup> variantNameAndGroup : newVariantNameToGroup.entrySet()) {
+			VariantGroup group = store.variantNameToGroup.get(variantNameAndGroup.getKey());
+			if (group == null) {
+				addedVariantNames.add(variantNameAndGroup.getKey());
+			} else if (!group.hasSameLines(variantNameAndGroup.getValue())) {
+				changedVariantNames.add(variantNameAndGroup.getKey());
+			}
+		}
+		SortedSet<String> removedVariantNames = new TreeSet<>(store.variantNameToGroup.keySet());
+		removedVariantNames.removeAll(newVariantNameToGroup.keySet());
+
+		store.variantNameToGroup.keySet().removeAll(removedVariantNames);
+		store.appendGroups(abridgedCosmicFilePath, newVariantNameToGroup, addedVariantNames, changedVariantNames);
+		store.compactIfMostlyUnindexed();
+		store.saveIndex();
+
+		SortedSet<String> affectedVariantNames = new TreeSet<>(addedVariantNames);
+		affectedVariantNames.addAll(changedVariantNames);
+		affectedVariantNames.addAll(removedVariantNames);
+		Files.write(store.storeDir.resolve(affectedVariantsFile), affectedVariantNames);
+
+		System.out.println(
+			addedVariantNames.size() + " added, " + removedVariantNames.size() + " removed and " +
+			changedVariantNames.size() + " changed variant(s) ingested from " + abridgedCosmicFilePath + " into " +
+			store.storeDir + ", listed in " + affectedVariantsFile
+		);
+	}
+
+	static AbridgedCosmicRecordStore open(Path storeDir) throws IOException {
+		AbridgedCosmicRecordStore store = new AbridgedCosmicRecordStore(storeDir);
+
+		Path indexFilePath = storeDir.resolve(indexFile);
+		if (!Files.exists(indexFilePath)) {
+			return store;
+		}
+
+		try (DataInputStream indexStream = new DataInputStream(
+			new BufferedInputStream(Files.newInputStream(indexFilePath))
+		)) {
+			store.recordsFileGeneration = indexStream.readInt();
+			store.recordsBytes = indexStream.readLong();
+
+			int variantCount = indexStream.readInt();
+			for (int variantIndex = 0; variantIndex < variantCount; variantIndex++) {
+				String variantName = indexStream.readUTF();
+				store.variantNameToGroup.put(variantName, new VariantGroup(
+					indexStream.readLong(), indexStream.readInt(), indexStream.readLong(), indexStream.readInt()
+				));
+			}
+		}
+		return store;
+	}
+
+	static Map<String, List<AbridgedCosmicRecord>> getVariantNameToAbridgedCosmicRecords(
+		Path storeDir, Predicate<String> variantNameFilter
+	) throws IOException {
+		if (!Files.exists(storeDir.resolve(indexFile))) {
+			throw new IllegalStateException(
+				"There is no " + indexFile + " in " + storeDir + " to read abridged cosmic records from"
+			);
+		}
+
+		return open(storeDir).getVariantNameToAbridgedCosmicRecords(variantNameFilter);
+	}
+
+	private Map<String, List<AbridgedCosmicRecord>> getVariantNameToAbridgedCosmicRecords(
+		Predicate<String> variantNameFilter
+	) throws IOException {
+		List<VariantGroup> groups = new ArrayList<>();
+		for (Map.Entry<String, VariantGroup> variantNameAndGroup : this.variantNameToGroup.entrySet()) {
+			if (variantNameFilter.test(variantNameAndGroup.getKey())) {
+				groups.add(variantNameAndGroup.getValue());
+			}
+		}
+		// Reading the groups in file order reads the records file front to back however many there are
+		groups.sort(Comparator.comparingLong(VariantGroup::getOffset));
+
+		List<AbridgedCosmicRecord> abridgedCosmicRecords = new ArrayList<>();
+		if (!groups.isEmpty()) {
+			try (FileChannel recordsFileChannel = FileChannel.open(getRecordsFilePath(), StandardOpenOption.READ)) {
+				for (VariantGroup group : groups) {
+					for (String tsvLine : readGroupLines(recordsFileChannel, group)) {
+						abridgedCosmicRecords.add(AbridgedCosmicRecord.parseAbridgedCosmicRecord(tsvLine));
+					}
+				}
+			}
+		}
+
+		return AbridgedCosmicRecordIndex.indexAbridgedCosmicRecords(abridgedCosmicRecords)
+			.asVariantNameToAbridgedCosmicRecords();
+	}
+
+	// The lines and bytes a merge of the variants passing the filter reads, to plan it from the index alone
+	long getIndexedLineCount(Predicate<String> variantNameFilter) {
+		long lineCount = 0;
+		for (Map.Entry<String, VariantGroup> variantNameAndGroup : this.variantNameToGroup.entrySet()) {
+			if (variantNameFilter.test(variantNameAndGroup.getKey())) {
+				lineCount += variantNameAndGroup.getValue().getLineCount();
+			}
+		}
+		return lineCount;
+	}
+
+	long getIndexedBytes(Predicate<String> variantNameFilter) {
+		long indexedBytes = 0;
+		for (Map.Entry<String, VariantGroup> variantNameAndGroup : this.variantNameToGroup.entrySet()) {
+			if (variantNameFilter.test(variantNameAndGroup.getKey())) {
+				indexedBytes += variantNameAndGroup.getValue().getLength();
+			}
+		}
+		return indexedBytes;
+	}
+
+	private static Map<String, VariantGroup> hashVariantGroups(Path abridgedCosmicFilePath) throws IOException {
+		Map<String, VariantGroup> variantNameToGroup = new HashMap<>();
+		try (BufferedReader tsvFileReader = Files.newBufferedReader(abridgedCosmicFilePath)) {
+			GenericRecord.checkHeader(
+				abridgedCosmicFilePath.toString(), AbridgedCosmicRecord.EXPECTED_HEADER, tsvFileReader.readLine()
+			);
+
+			String tsvLine;
+			while ((tsvLine = tsvFileReader.readLine()) != null) {
+				String variantName = getField(tsvLine, AbridgedCosmicRecord.VARIANT_NAME_FIELD);
+				variantNameToGroup.computeIfAbsent(variantName, name -> new VariantGroup()).addLine(tsvLine);
+			}
+		}
+		return variantNameToGroup;
+	}
+
+	// The lines of the variants to append are read in batches of at most batchBytes, each batch in one pass over the
+	// file, so only the lines of one batch are held at once
+	private void appendGroups(
+		Path abridgedCosmicFilePath,
+		Map<String, VariantGroup> newVariantNameToGroup,
+		Set<String> addedVariantNames,
+		Set<String> changedVariantNames
+	) throws IOException {
+		List<String> appendedVariantNames = new ArrayList<>(addedVariantNames);
+		appendedVariantNames.addAll(changedVariantNames);
+
+		try (FileChannel recordsFileChannel = FileChannel.open(
+			getRecordsFilePath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE
+		)) {
+			// Drops anything an ingest that failed before replacing the index left after the groups the index gives
+			recordsFileChannel.truncate(this.recordsBytes);
+			recordsFileChannel.position(this.recordsBytes);
+			OutputStream recordsStream = new BufferedOutputStream(Channels.newOutputStream(recordsFileChannel));
+
+			int batchStart = 0;
+			while (batchStart < appendedVariantNames.size()) {
+				int batchEnd = batchStart;
+				long batchLineBytes = 0;
+				do {
+					batchLineBytes += newVariantNameToGroup.get(appendedVariantNames.get(batchEnd++)).getLength();
+				} while (batchEnd < appendedVariantNames.size() && batchLineBytes < batchBytes);
+
+				Map<String, StringBuilder> variantNameToLines = new LinkedHashMap<>();
+				for (String variantName : appendedVariantNames.subList(batchStart, batchEnd)) {
+					variantNameToLines.put(variantName, new StringBuilder());
+				}
+				readVariantLines(abridgedCosmicFilePath, variantNameToLines);
+
+				for (Map.Entry<String, StringBuilder> variantNameAndLines : variantNameToLines.entrySet()) {
+					byte[] groupBytes = variantNameAndLines.getValue().toString().getBytes(StandardCharsets.UTF_8);
+					recordsStream.write(groupBytes);
+
+					VariantGroup newGroup = newVariantNameToGroup.get(variantNameAndLines.getKey());
+					this.variantNameToGroup.put(
+						variantNameAndLines.getKey(),
+						new VariantGroup(newGroup.getHash(), newGroup.getLineCount(), this.recordsBytes, groupBytes.length)
+					);
+					this.recordsBytes += groupBytes.length;
+				}
+				batchStart = batchEnd;
+			}
+
+			// The groups are forced to disk first, so the index never gives groups the records file does not have
+			recordsStream.flush();
+			recordsFileChannel.force(false);
+		}
+	}
+
+	// Parses each line kept, so a malformed line fails the ingest rather than a later merge
+	private static void readVariantLines(Path abridgedCosmicFilePath, Map<String, StringBuilder> variantNameToLines)
+		throws IOException {
+
+		try (BufferedReader tsvFileReader = Files.newBufferedReader(abridgedCosmicFilePath)) {
+			// Skips the header
+			String tsvLine = tsvFileReader.readLine();
+			while ((tsvLine = tsvFileReader.readLine()) != null) {
+				StringBuilder lines = variantNameToLines.get(getField(tsvLine, AbridgedCosmicRecord.VARIANT_NAME_FIELD));
+				if (lines != null) {
+					AbridgedCosmicRecord.parseAbridgedCosmicRecord(tsvLine);
+					lines.append(tsvLine).append('\n');
+				}
+			}
+		}
+	}
+
+	private void compactIfMostlyUnindexed() throws IOException {
+		long indexedBytes = 0;
+		for (VariantGroup group : this.variantNameToGroup.values()) {
+			indexedBytes += group.getLength();
+		}
+		if (indexedBytes * 2 >= this.recordsBytes) {
+			return;
+		}
+
+		// The compacted groups go to a new records file, which the index only names once it is replaced
+		Path recordsFilePath = getRecordsFilePath();
+		this.recordsFileGeneration++;
+		long compactedBytes = 0;
+		try (
+			FileChannel recordsFileChannel = FileChannel.open(recordsFilePath, StandardOpenOption.READ);
+			FileChannel compactedFileChannel = FileChannel.open(
+				getRecordsFilePath(),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE
+			)
+		) {
+			List<VariantGroup> groupsInFileOrder = new ArrayList<>(this.variantNameToGroup.values());
+			groupsInFileOrder.sort(Comparator.comparingLong(VariantGroup::getOffset));
+
+			Map<VariantGroup, Long> groupToCompactedOffset = new IdentityHashMap<>();
+			for (VariantGroup group : groupsInFileOrder) {
+				long position = group.getOffset();
+				long byteCount = group.getLength();
+				while (byteCount > 0) {
+					long transferredBytes = recordsFileChannel.transferTo(position, byteCount, compactedFileChannel);
+					position += transferredBytes;
+					byteCount -= transferredBytes;
+				}
+				groupToCompactedOffset.put(group, compactedBytes);
+				compactedBytes += group.getLength();
+			}
+			compactedFileChannel.force(false);
+
+			for (Map.Entry<String, VariantGroup> variantNameAndGroup : this.variantNameToGroup.entrySet()) {
+				VariantGroup group = variantNameAndGroup.getValue();
+				variantNameAndGroup.setValue(new VariantGroup(
+					group.getHash(), group.getLineCount(), groupToCompactedOffset.get(group), group.getLength()
+				));
+			}
+		}
+		this.recordsBytes = compactedBytes;
+	}
+
+	// Replacing the index in one move means a failed ingest leaves the index of the last one in place
+	private void saveIndex() throws IOException {
+		Path indexFilePath = this.storeDir.resolve(indexFile);
+		Path newIndexFilePath = this.storeDir.resolve(indexFile + ".new");
+		try (DataOutputStream indexStream = new DataOutputStream(
+			new BufferedOutputStream(Files.newOutputStream(newIndexFilePath))
+		)) {
+			indexStream.writeInt(this.recordsFileGeneration);
+			indexStream.writeLong(this.recordsBytes);
+
+			indexStream.writeInt(this.variantNameToGroup.size());
+			for (Map.Entry<String, VariantGroup> variantNameAndGroup : this.variantNameToGroup.entrySet()) {
+				VariantGroup group = variantNameAndGroup.getValue();
+				indexStream.writeUTF(variantNameAndGroup.getKey());
+				indexStream.writeLong(group.getHash());
+				indexStream.writeInt(group.getLineCount());
+				indexStream.writeLong(group.getOffset());
+				indexStream.writeInt(group.getLength());
+			}
+		}
+		Files.move(
+			newIndexFilePath, indexFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+		);
+
+		// Records files of earlier generations are no longer named by the index
+		for (int generation = this.recordsFileGeneration - 1; generation >= 0; generation--) {
+			if (!Files.deleteIfExists(getRecordsFilePath(generation))) {
+				break;
+			}
+		}
+	}
+
+	private Path getRecordsFilePath() {
+		return getRecordsFilePath(this.recordsFileGeneration);
+	}
+
+	private Path getRecordsFilePath(int generation) {
+		return this.storeDir.resolve(recordsFilePrefix + generation + recordsFileExtension);
+	}
+
+	private static List<String> readGroupLines(FileChannel recordsFileChannel, VariantGroup group) throws IOException {
+		ByteBuffer groupBytes = ByteBuffer.allocate(group.getLength());
+		while (groupBytes.hasRemaining()) {
+			if (recordsFileChannel.read(groupBytes, group.getOffset() + groupBytes.position()) < 0) {
+				throw new IllegalStateException("The records file is shorter than " + indexFile + " gives");
+			}
+		}
+
+		// Each line ends with '\n', so the last element is empty and not a line of its own
+		String[] lines = new String(groupBytes.array(), StandardCharsets.UTF_8).split("\n", -1);
+		return Arrays.asList(lines).subList(0, lines.length - 1);
+	}
+
+	private static class VariantGroup {
+		private long hash;
+		private int lineCount;
+		private long offset;
+		private int length;
+
+		VariantGroup() {
+			this(FNV_OFFSET_BASIS, 0, 0, 0);
+		}
+
+		VariantGroup(long hash, int lineCount, long offset, int length) {
+			this.hash = hash;
+			this.lineCount = lineCount;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		// Hashes the lines in order, as the order of a variant's records is the order of its ids in the merged output
+		void addLine(String tsvLine) {
+			for (int charIndex = 0; charIndex < tsvLine.length(); charIndex++) {
+				this.hash = (this.hash ^ tsvLine.charAt(charIndex)) * FNV_PRIME;
+			}
+			this.hash = (this.hash ^ '\n') * FNV_PRIME;
+			this.lineCount++;
+			this.length += tsvLine.length() + 1;
+		}
+
+		boolean hasSameLines(VariantGroup group) {
+			return this.hash == group.hash && this.lineCount == group.lineCount;
+		}
+
+		long getHash() {
+			return this.hash;
+		}
+
+		int getLineCount() {
+			return this.lineCount;
+		}
+
+		long getOffset() {
+			return this.offset;
+		}
+
+		// Bytes in the records file, or only an estimate of them for a group still being hashed
+		int getLength() {
+			return this.length;
+		}
+	}
+}
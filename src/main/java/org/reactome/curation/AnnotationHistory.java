@@ -0,0 +1,390 @@
+package org.reactome.curation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the common annotations of every release's merged.txt in one append-only log, with an entry for a variant only
+ * in the releases where it is added, changed or removed.  A compact index gives the release and position in the log
+ * of each variant's entries, and each release appended adds a segment with only its own entries to it, so appending
+ * costs as much as the release's changes however long the history is.  The history of a variant or a snapshot of
+ * every variant as of a release is read from the log entries it needs rather than from every release's merged.txt.
+ * Log entries end with '\n' whatever the platform, so a store can be moved between hosts.  The store is in the directory given by -DvariantAnnotation.historyDir ("history" by default) and is used with
+ * "history append &lt;release&gt; [merged file]", "history variant &lt;variant name&gt;" and
+ * "history snapshot &lt;release&gt;".
+ */
+public class AnnotationHistory {
+	static final String historyDirProperty = "variantAnnotation.historyDir";
+
+	private static final String logFile = "history.log";
+	private static final String indexFile = "history.idx";
+
+	private static final String ADDED = "added";
+	private static final String CHANGED = "changed";
+	private static final String REMOVED = "removed";
+
+	private static final List<String> annotationColumns = Arrays.asList(
+		"Protein", "Variant_name", "Variant_ID", "Mutation_AA", "COSMIC_Pubmed_PMID", "Status", "ReleaseVersion",
+		"Protein_in_Reactome", "Any_Variants_Annotated"
+	);
+
+	private Path historyDir;
+	private List<Integer> releases = new ArrayList<>();
+	private long logBytes;
+	private long indexBytes;
+	private SortedMap<String, List<HistoryEntry>> variantNameToEntries = new TreeMap<>();
+
+	private AnnotationHistory(Path historyDir) {
+		this.historyDir = historyDir;
+	}
+
+	public static void run(String[] args) throws IOException {
+		AnnotationHistory annotationHistory = open(Paths.get(System.getProperty(historyDirProperty, "history")));
+
+		if (args.length > 1 && args[0].equals("append")) {
+			annotationHistory.append(
+				Integer.parseInt(args[1]), Paths.get(args.length > 2 ? args[2] : Main.outputFile)
+			);
+		} else if (args.length > 1 && args[0].equals("variant")) {
+			annotationHistory.printVariantHistory(args[1]);
+		} else if (args.length > 1 && args[0].equals("snapshot")) {
+			annotationHistory.printSnapshot(Integer.parseInt(args[1]));
+		} else {
+			throw new IllegalArgumentException(
+				"Expected history append <release> [merged file], history variant <variant name> or " +
+				"history snapshot <release>, but received history " + String.join(" ", args)
+			);
+		}
+	}
+
+	static AnnotationHistory open(Path historyDir) throws IOException {
+		AnnotationHistory annotationHistory = new AnnotationHistory(historyDir);
+
+		Path indexFilePath = historyDir.resolve(indexFile);
+		if (!Files.exists(indexFilePath)) {
+			return annotationHistory;
+		}
+
+		// Each segment starts with its length, so a segment a failed append left incomplete is found and ignored
+		long indexFileBytes = Files.size(indexFilePath);
+		try (DataInputStream indexStream = new DataInputStream(
+			new BufferedInputStream(Files.newInputStream(indexFilePath))
+		)) {
+			while (annotationHistory.indexBytes + Integer.BYTES <= indexFileBytes) {
+				int segmentLength = indexStream.readInt();
+				if (annotationHistory.indexBytes + Integer.BYTES + segmentLength > indexFileBytes) {
+					break;
+				}
+
+				int release = indexStream.readInt();
+				annotationHistory.releases.add(release);
+				annotationHistory.logBytes = indexStream.readLong();
+
+				int entryCount = indexStream.readInt();
+				for (int entryIndex = 0; entryIndex < entryCount; entryIndex++) {
+					String variantName = indexStream.readUTF();
+					annotationHistory.variantNameToEntries
+						.computeIfAbsent(variantName, name -> new ArrayList<>())
+						.add(new HistoryEntry(release, indexStream.readLong(), indexStream.readInt()));
+				}
+				annotationHistory.indexBytes += Integer.BYTES + segmentLength;
+			}
+		}
+		return annotationHistory;
+	}
+
+	void append(int release, Path mergedFilePath) throws IOException {
+		if (!this.releases.isEmpty() && release <= this.releases.get(this.releases.size() - 1)) {
+			throw new IllegalArgumentException(
+				"The history is append-only, so release " + release + " must come after the last release appended, " +
+				this.releases.get(this.releases.size() - 1)
+			);
+		}
+
+		Map<String, String> variantNameToLatestAnnotations = new HashMap<>();
+		for (Map.Entry<String, String> variantNameAndEntryLine : readLatestEntryLines(Integer.MAX_VALUE).entrySet()) {
+			variantNameToLatestAnnotations.put(
+				variantNameAndEntryLine.getKey(), getAnnotations(variantNameAndEntryLine.getValue())
+			);
+		}
+
+		Map<String, HistoryEntry> variantNameToReleaseEntry = new LinkedHashMap<>();
+		Files.createDirectories(this.historyDir);
+		Path logFilePath = this.historyDir.resolve(logFile);
+		try (FileChannel logFileChannel = FileChannel.open(
+			logFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+		)) {
+			// Drops anything a run that failed before appending to the index left after the entries the index gives
+			logFileChannel.truncate(this.logBytes);
+			logFileChannel.position(this.logBytes);
+
+			try (
+				OutputStream logStream = new BufferedOutputStream(Channels.newOutputStream(logFileChannel));
+				BufferedReader mergedFileReader = Files.newBufferedReader(mergedFilePath, Charset.defaultCharset())
+			) {
+				GenericRecord.checkHeader(
+					mergedFilePath.toString(), Main.getOutputHeaderLine().trim(), mergedFileReader.readLine()
+				);
+
+				String outputLine;
+				while ((outputLine = mergedFileReader.readLine()) != null) {
+					CommonAnnotations commonAnnotations = parseCommonAnnotations(outputLine);
+					String annotations = String.join("\t", getAnnotationFields(commonAnnotations));
+
+					String latestAnnotations = variantNameToLatestAnnotations.remove(commonAnnotations.getVariantName());
+					if (latestAnnotations == null) {
+						appendEntry(
+							logStream, release, ADDED, commonAnnotations.getVariantName(), annotations, variantNameToReleaseEntry
+						);
+					} else if (!latestAnnotations.equals(annotations)) {
+						appendEntry(
+							logStream, release, CHANGED, commonAnnotations.getVariantName(), annotations, variantNameToReleaseEntry
+						);
+					}
+				}
+
+				// Whatever is left was in the last release but not in this one
+				for (String variantName : new TreeSet<>(variantNameToLatestAnnotations.keySet())) {
+					appendEntry(
+						logStream, release, REMOVED, variantName, getRemovedAnnotations(variantName), variantNameToReleaseEntry
+					);
+				}
+
+				// The entries are forced to disk first, so the index never gives entries the log does not have
+				logStream.flush();
+				logFileChannel.force(false);
+			}
+		}
+
+		appendIndexSegment(release, variantNameToReleaseEntry);
+
+		this.releases.add(release);
+		for (Map.Entry<String, HistoryEntry> variantNameAndEntry : variantNameToReleaseEntry.entrySet()) {
+			this.variantNameToEntries
+				.computeIfAbsent(variantNameAndEntry.getKey(), name -> new ArrayList<>())
+				.add(variantNameAndEntry.getValue());
+		}
+	}
+
+	void printVariantHistory(String variantName) throws IOException {
+		System.out.println(getEntryHeaderLine());
+		for (String entryLine : readEntryLines(this.variantNameToEntries.getOrDefault(
+			variantName, Collections.emptyList()
+		)).values()) {
+			System.out.println(getWithoutLineEnd(entryLine));
+		}
+	}
+
+	// Each variant's last entry at or before the release gives its annotations as of that release
+	void printSnapshot(int release) throws IOException {
+		System.out.println(getEntryHeaderLine());
+		for (String entryLine : readLatestEntryLines(release).values()) {
+			System.out.println(getWithoutLineEnd(entryLine));
+		}
+	}
+
+	private SortedMap<String, String> readLatestEntryLines(int release) throws IOException {
+		Map<HistoryEntry, String> latestEntryToVariantName = new HashMap<>();
+		for (Map.Entry<String, List<HistoryEntry>> variantNameAndEntries : this.variantNameToEntries.entrySet()) {
+			HistoryEntry latestEntry = null;
+			for (HistoryEntry entry : variantNameAndEntries.getValue()) {
+				if (entry.getRelease() > release) {
+					break;
+				}
+				latestEntry = entry;
+			}
+
+			if (latestEntry != null) {
+				latestEntryToVariantName.put(latestEntry, variantNameAndEntries.getKey());
+			}
+		}
+
+		SortedMap<String, String> variantNameToLatestEntryLine = new TreeMap<>();
+		for (Map.Entry<HistoryEntry, String> entryAndEntryLine :
+			readEntryLines(latestEntryToVariantName.keySet()).entrySet()) {
+
+			if (!getChange(entryAndEntryLine.getValue()).equals(REMOVED)) {
+				variantNameToLatestEntryLine.put(
+					latestEntryToVariantName.get(entryAndEntryLine.getKey()), entryAndEntryLine.getValue()
+				);
+			}
+		}
+		return variantNameToLatestEntryLine;
+	}
+
+	// Reads the entries in log order, so the log is read front to back however many there are
+	private Map<HistoryEntry, String> readEntryLines(Collection<HistoryEntry> entries) throws IOException {
+		List<HistoryEntry> entriesInLogOrder = new ArrayList<>(entries);
+		entriesInLogOrder.sort(Comparator.comparingLong(HistoryEntry::getOffset));
+
+		Map<HistoryEntry, String> entryToEntryLine = new LinkedHashMap<>();
+		if (entriesInLogOrder.isEmpty()) {
+			return entryToEntryLine;
+		}
+
+		try (FileChannel logFileChannel = FileChannel.open(this.historyDir.resolve(logFile), StandardOpenOption.READ)) {
+			for (HistoryEntry entry : entriesInLogOrder) {
+				ByteBuffer entryBytes = ByteBuffer.allocate(entry.getLength());
+				while (entryBytes.hasRemaining()) {
+					if (logFileChannel.read(entryBytes, entry.getOffset() + entryBytes.position()) < 0) {
+						throw new IllegalStateException(
+							logFile + " in " + this.historyDir + " is shorter than " + indexFile + " gives"
+						);
+					}
+				}
+				entryToEntryLine.put(entry, new String(entryBytes.array(), StandardCharsets.UTF_8));
+			}
+		}
+		return entryToEntryLine;
+	}
+
+	private void appendEntry(
+		OutputStream logStream,
+		int release,
+		String change,
+		String variantName,
+		String annotations,
+		Map<String, HistoryEntry> variantNameToReleaseEntry
+	) throws IOException {
+		byte[] entryBytes = String.join("\t", Integer.toString(release), change, annotations)
+			.concat("\n")
+			.getBytes(StandardCharsets.UTF_8);
+		logStream.write(entryBytes);
+
+		variantNameToReleaseEntry.put(variantName, new HistoryEntry(release, this.logBytes, entryBytes.length));
+		this.logBytes += entryBytes.length;
+	}
+
+	// Only the release's own entries are appended, after the log holding them is forced to disk, and a failed append
+	// leaves an incomplete segment which is ignored when the index is read and overwritten by the next append
+	private void appendIndexSegment(int release, Map<String, HistoryEntry> variantNameToReleaseEntry)
+		throws IOException {
+
+		ByteArrayOutputStream segmentBytes = new ByteArrayOutputStream();
+		try (DataOutputStream segmentStream = new DataOutputStream(segmentBytes)) {
+			segmentStream.writeInt(release);
+			segmentStream.writeLong(this.logBytes);
+
+			segmentStream.writeInt(variantNameToReleaseEntry.size());
+			for (Map.Entry<String, HistoryEntry> variantNameAndEntry : variantNameToReleaseEntry.entrySet()) {
+				segmentStream.writeUTF(variantNameAndEntry.getKey());
+				segmentStream.writeLong(variantNameAndEntry.getValue().getOffset());
+				segmentStream.writeInt(variantNameAndEntry.getValue().getLength());
+			}
+		}
+
+		ByteBuffer segment = ByteBuffer.allocate(Integer.BYTES + segmentBytes.size());
+		segment.putInt(segmentBytes.size());
+		segment.put(segmentBytes.toByteArray());
+		segment.flip();
+
+		try (FileChannel indexFileChannel = FileChannel.open(
+			this.historyDir.resolve(indexFile), StandardOpenOption.CREATE, StandardOpenOption.WRITE
+		)) {
+			indexFileChannel.truncate(this.indexBytes);
+			indexFileChannel.position(this.indexBytes);
+			while (segment.hasRemaining()) {
+				indexFileChannel.write(segment);
+			}
+			indexFileChannel.force(false);
+		}
+		this.indexBytes += segment.limit();
+	}
+
+	private static CommonAnnotations parseCommonAnnotations(String outputLine) {
+		String[] fields = outputLine.split("\t", -1);
+
+		return new CommonAnnotations.Builder()
+			.withRecordLine(outputLine)
+			.withProtein(fields[0])
+			.withVariantName(fields[3])
+			.withVariantIds(fields[4].isEmpty() ? Collections.emptyList() : Arrays.asList(fields[4].split(",")))
+			.withMutationAA(fields[6])
+			.withCosmicPubMedIds(
+				fields[10].isEmpty() ?
+					Collections.emptyList() :
+					Arrays.stream(fields[10].split(",")).map(Long::parseLong).collect(Collectors.toList())
+			)
+			.withStatus(fields[15])
+			.withReleaseVersion(fields[16].isEmpty() ? -1 : Integer.parseInt(fields[16]))
+			.isProteinInReactome(parseYesNo(fields[17]))
+			.areAnyVariantsAnnotated(parseYesNo(fields[18]))
+			.build();
+	}
+
+	private static Boolean parseYesNo(String value) {
+		return value.isEmpty() ? null : value.equals("yes");
+	}
+
+	private static List<String> getAnnotationFields(CommonAnnotations commonAnnotations) {
+		return Arrays.asList(
+			commonAnnotations.getProtein(),
+			commonAnnotations.getVariantName(),
+			commonAnnotations.getVariantIdsAsString(),
+			commonAnnotations.getMutationAA(),
+			commonAnnotations.getCosmicPubMedIdsAsString(),
+			commonAnnotations.getStatus(),
+			commonAnnotations.getReleaseVersionAsString(),
+			commonAnnotations.getIsProteinInReactomeAsString(),
+			commonAnnotations.getAreAnyVariantsAnnotatedAsString()
+		);
+	}
+
+	private static String getRemovedAnnotations(String variantName) {
+		List<String> annotationFields = new ArrayList<>(Collections.nCopies(annotationColumns.size(), ""));
+		annotationFields.set(annotationColumns.indexOf("Variant_name"), variantName);
+		return String.join("\t", annotationFields);
+	}
+
+	private static String getEntryHeaderLine() {
+		return String.join("\t", "Release", "Change", String.join("\t", annotationColumns));
+	}
+
+	private static String getChange(String entryLine) {
+		return GenericRecord.getField(entryLine, 1);
+	}
+
+	// Everything after the release and change, without the '\n' ending the entry
+	private static String getAnnotations(String entryLine) {
+		int annotationsStart = entryLine.indexOf('\t', entryLine.indexOf('\t') + 1) + 1;
+		return getWithoutLineEnd(entryLine).substring(annotationsStart);
+	}
+
+	private static String getWithoutLineEnd(String entryLine) {
+		return entryLine.substring(0, entryLine.length() - 1);
+	}
+
+	private static class HistoryEntry {
+		private int release;
+		private long offset;
+		private int length;
+
+		HistoryEntry(int release, long offset, int length) {
+			this.release = release;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		int getRelease() {
+			return this.release;
+		}
+
+		long getOffset() {
+			return this.offset;
+		}
+
+		int getLength() {
+			return this.length;
+		}
+	}
+}
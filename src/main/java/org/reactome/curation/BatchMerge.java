@@ -0,0 +1,105 @@
+package org.reactome.curation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.reactome.curation.GenericRecord.getField;
+
+/**
+ * Merges several disease gene and high priority variant snapshots against one abridged cosmic file.  The cosmic
+ * records are parsed and grouped once, then every snapshot is merged concurrently against the shared, read-only
+ * grouping into its own output and error file.
+ */
+public class BatchMerge {
+	private final static String EXPECTED_HEADER = String.join(
+		"\t",
+		"DiseaseGenes",
+		"HighPriorityVariants",
+		"Output",
+		"Errors"
+	);
+
+	private String diseaseGenesFilePath;
+	private String highPriorityVariantsFilePath;
+	private String outputFilePath;
+	private String errorFilePath;
+
+	private BatchMerge(String tsvLine) {
+		int currentField = 0;
+
+		this.diseaseGenesFilePath = getField(tsvLine, currentField++);
+		this.highPriorityVariantsFilePath = getField(tsvLine, currentField++);
+		this.outputFilePath = getField(tsvLine, currentField++);
+		this.errorFilePath = getField(tsvLine, currentField++);
+	}
+
+	public static void run(String batchFilePath) throws IOException, InterruptedException {
+		List<BatchMerge> batchMerges = GenericRecord.parseRecords(batchFilePath, EXPECTED_HEADER, BatchMerge::new);
+		if (batchMerges.isEmpty()) {
+			return;
+		}
+
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
+			Main.getVariantNameToAbridgedCosmicRecords(variantName -> true);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(
+			Math.min(batchMerges.size(), Runtime.getRuntime().availableProcessors())
+		);
+		List<Future<?>> batchMergeResults = new ArrayList<>();
+		try {
+			for (BatchMerge batchMerge : batchMerges) {
+				batchMergeResults.add(executorService.submit(() -> {
+					batchMerge.merge(variantNameToAbridgedCosmicRecords);
+					return null;
+				}));
+			}
+
+			List<String> failedOutputFiles = new ArrayList<>();
+			for (int batchIndex = 0; batchIndex < batchMerges.size(); batchIndex++) {
+				try {
+					batchMergeResults.get(batchIndex).get();
+				} catch (ExecutionException e) {
+					String outputFilePath = batchMerges.get(batchIndex).outputFilePath;
+					System.err.println("Unable to merge " + outputFilePath + ": " + e.getCause());
+					failedOutputFiles.add(outputFilePath);
+				}
+			}
+
+			if (!failedOutputFiles.isEmpty()) {
+				throw new IllegalStateException("Batch merge failed for " + failedOutputFiles);
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private void merge(Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords)
+		throws IOException {
+
+		Files.deleteIfExists(Paths.get(this.outputFilePath));
+		Files.deleteIfExists(Paths.get(this.errorFilePath));
+
+		List<DiseaseGeneRecord> diseaseGeneRecords = DiseaseGeneRecord.parseDiseaseGeneRecords(
+			this.diseaseGenesFilePath
+		);
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords =
+			HighPriorityVariantRecord.parseHighPriorityVariantRecords(this.highPriorityVariantsFilePath);
+
+		Main.printOutputHeaders(this.outputFilePath);
+		Main.printOutputLines(
+			diseaseGeneRecords,
+			allHighPriorityVariantRecords,
+			variantNameToAbridgedCosmicRecords,
+			this.outputFilePath,
+			this.errorFilePath
+		);
+	}
+}
@@ -0,0 +1,279 @@
+package org.reactome.curation;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static java.lang.System.lineSeparator;
+
+/**
+ * Writes merged.txt and merged.err for a single node run, saving a checkpoint after every
+ * -DvariantAnnotation.checkpointInterval records written (10000 by default, 0 for none).  Errors and output lines are
+ * written in ordinal order, so a checkpoint only needs the ordinal of the last record written, the length of both
+ * files at that point and fingerprints of the input files.  After a crash, "resume" truncates both files to the
+ * checkpoint, merges only the variants with records after it and carries on writing.  The checkpoint is deleted once
+ * a run completes.
+ */
+public class CheckpointedMerge implements Main.MergeListener, Closeable {
+	static final String checkpointFile = "merged.checkpoint";
+	static final String checkpointIntervalProperty = "variantAnnotation.checkpointInterval";
+
+	private static final String LAST_ORDINAL = "lastOrdinal";
+	private static final String LAST_VARIANT_NAME = "lastVariantName";
+	private static final String OUTPUT_BYTES = "outputBytes";
+	private static final String ERROR_BYTES = "errorBytes";
+	private static final String FINGERPRINT_PREFIX = "fingerprint.";
+
+	private int checkpointInterval = Integer.getInteger(checkpointIntervalProperty, 10_000);
+	private Map<String, String> inputFingerprints;
+
+	private FileOutputStream outputFileStream;
+	private OutputStream outputStream;
+	private long outputBytes;
+	private FileOutputStream errorFileStream;
+	private OutputStream errorStream;
+	private long errorBytes;
+
+	private long lastOrdinal;
+	private String lastVariantName;
+	private int recordsSinceCheckpoint;
+
+	private CheckpointedMerge(
+		Map<String, String> inputFingerprints, long lastOrdinal, String lastVariantName, long outputBytes, long errorBytes
+	) throws IOException {
+		this.inputFingerprints = inputFingerprints;
+		this.lastOrdinal = lastOrdinal;
+		this.lastVariantName = lastVariantName;
+
+		this.outputFileStream = new FileOutputStream(Main.outputFile, true);
+		this.outputStream = new BufferedOutputStream(this.outputFileStream);
+		this.outputBytes = outputBytes;
+		this.errorBytes = errorBytes;
+	}
+
+	public static void run(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords
+	) throws IOException {
+		try (CheckpointedMerge checkpointedMerge = new CheckpointedMerge(getInputFingerprints(), -1, "", 0, 0)) {
+			checkpointedMerge.outputBytes += checkpointedMerge.write(
+				checkpointedMerge.outputStream, Main.getOutputHeaderLine()
+			);
+			checkpointedMerge.saveCheckpoint();
+
+			new MergeJoin(diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords)
+				.merge(checkpointedMerge);
+		}
+
+		Files.deleteIfExists(Paths.get(checkpointFile));
+	}
+
+	public static void resume() throws IOException {
+		Properties checkpoint = loadCheckpoint();
+
+		Map<String, String> inputFingerprints = getInputFingerprints();
+		for (Map.Entry<String, String> inputFingerprint : inputFingerprints.entrySet()) {
+			String checkpointFingerprint = checkpoint.getProperty(FINGERPRINT_PREFIX + inputFingerprint.getKey());
+			if (!inputFingerprint.getValue().equals(checkpointFingerprint)) {
+				throw new IllegalStateException(
+					inputFingerprint.getKey() + " has changed since " + checkpointFile + " was saved, so the merge " +
+					"has to be run again from the start"
+				);
+			}
+		}
+
+		long lastOrdinal = Long.parseLong(checkpoint.getProperty(LAST_ORDINAL));
+		long outputBytes = Long.parseLong(checkpoint.getProperty(OUTPUT_BYTES));
+		long errorBytes = Long.parseLong(checkpoint.getProperty(ERROR_BYTES));
+
+		truncate(Paths.get(Main.outputFile), outputBytes);
+		if (errorBytes > 0) {
+			truncate(Paths.get(Main.errorFile), errorBytes);
+		} else {
+			Files.deleteIfExists(Paths.get(Main.errorFile));
+		}
+
+		Set<String> writtenVariantNames = new HashSet<>();
+		try (BufferedReader outputReader = Files.newBufferedReader(Paths.get(Main.outputFile), Charset.defaultCharset())) {
+			// Skips the header
+			String outputLine = outputReader.readLine();
+			while ((outputLine = outputReader.readLine()) != null) {
+				writtenVariantNames.add(GenericRecord.getField(outputLine, 3));
+			}
+		}
+
+		List<DiseaseGeneRecord> diseaseGeneRecords = Main.parseDiseaseGeneRecords();
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords = Main.parseHighPriorityVariantRecords();
+
+		// Only variants with a record after the checkpoint are merged again, so only their abridged cosmic records
+		// are needed
+		Set<String> pendingVariantNames = new HashSet<>();
+		for (int recordIndex = 0; recordIndex < diseaseGeneRecords.size(); recordIndex++) {
+			if (Main.getRecordOrdinal(Main.DISEASE_GENE_PASS, recordIndex) > lastOrdinal) {
+				pendingVariantNames.add(diseaseGeneRecords.get(recordIndex).getVariantName());
+			}
+		}
+		for (int recordIndex = 0; recordIndex < allHighPriorityVariantRecords.size(); recordIndex++) {
+			if (Main.getRecordOrdinal(Main.HIGH_PRIORITY_VARIANT_PASS, recordIndex) > lastOrdinal) {
+				pendingVariantNames.add(allHighPriorityVariantRecords.get(recordIndex).getVariantName());
+			}
+		}
+
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
+			Main.getVariantNameToAbridgedCosmicRecords(pendingVariantNames::contains);
+
+		try (CheckpointedMerge checkpointedMerge = new CheckpointedMerge(
+			inputFingerprints, lastOrdinal, checkpoint.getProperty(LAST_VARIANT_NAME), outputBytes, errorBytes
+		)) {
+			new MergeJoin(diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords)
+				.resumeAfter(lastOrdinal, writtenVariantNames)
+				.merge(checkpointedMerge);
+		}
+
+		Files.deleteIfExists(Paths.get(checkpointFile));
+		Main.writeColumnarOutputIfRequested();
+	}
+
+	@Override
+	public void onOutputLine(int pass, int recordIndex, String variantName, String outputLine) {
+		try {
+			this.outputBytes += write(this.outputStream, outputLine);
+			this.lastVariantName = variantName;
+			recordWritten(Main.getRecordOrdinal(pass, recordIndex));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void onErrors(int pass, int recordIndex, List<String> errors) {
+		try {
+			// The error file is only created when there is something to report
+			if (this.errorStream == null) {
+				this.errorFileStream = new FileOutputStream(Main.errorFile, true);
+				this.errorStream = new BufferedOutputStream(this.errorFileStream);
+			}
+
+			for (String error : errors) {
+				this.errorBytes += write(this.errorStream, error.concat(lineSeparator()));
+			}
+			recordWritten(Main.getRecordOrdinal(pass, recordIndex));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			this.outputStream.close();
+		} finally {
+			if (this.errorStream != null) {
+				this.errorStream.close();
+			}
+		}
+	}
+
+	private void recordWritten(long ordinal) throws IOException {
+		this.lastOrdinal = ordinal;
+		this.recordsSinceCheckpoint++;
+		if (this.checkpointInterval > 0 && this.recordsSinceCheckpoint >= this.checkpointInterval) {
+			saveCheckpoint();
+		}
+	}
+
+	// Both files are forced to disk first, so they are never shorter than the lengths a checkpoint gives
+	private void saveCheckpoint() throws IOException {
+		if (this.checkpointInterval <= 0) {
+			return;
+		}
+
+		this.outputStream.flush();
+		this.outputFileStream.getChannel().force(false);
+		if (this.errorStream != null) {
+			this.errorStream.flush();
+			this.errorFileStream.getChannel().force(false);
+		}
+
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty(LAST_ORDINAL, Long.toString(this.lastOrdinal));
+		checkpoint.setProperty(LAST_VARIANT_NAME, this.lastVariantName);
+		checkpoint.setProperty(OUTPUT_BYTES, Long.toString(this.outputBytes));
+		checkpoint.setProperty(ERROR_BYTES, Long.toString(this.errorBytes));
+		for (Map.Entry<String, String> inputFingerprint : this.inputFingerprints.entrySet()) {
+			checkpoint.setProperty(FINGERPRINT_PREFIX + inputFingerprint.getKey(), inputFingerprint.getValue());
+		}
+
+		// Replacing the checkpoint in one move means a crash never leaves half of one behind
+		Path checkpointFilePath = Paths.get(checkpointFile);
+		Path newCheckpointFilePath = Paths.get(checkpointFile + ".new");
+		try (OutputStream checkpointStream = Files.newOutputStream(newCheckpointFilePath)) {
+			checkpoint.store(checkpointStream, "Merge checkpoint");
+		}
+		Files.move(
+			newCheckpointFilePath, checkpointFilePath,
+			StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+		);
+
+		this.recordsSinceCheckpoint = 0;
+	}
+
+	private int write(OutputStream outputStream, String text) throws IOException {
+		byte[] bytes = text.getBytes();
+		outputStream.write(bytes);
+		return bytes.length;
+	}
+
+	private static Properties loadCheckpoint() throws IOException {
+		Path checkpointFilePath = Paths.get(checkpointFile);
+		if (!Files.exists(checkpointFilePath)) {
+			throw new IllegalStateException("There is no " + checkpointFile + " to resume the merge from");
+		}
+
+		Properties checkpoint = new Properties();
+		try (InputStream checkpointStream = Files.newInputStream(checkpointFilePath)) {
+			checkpoint.load(checkpointStream);
+		}
+		return checkpoint;
+	}
+
+	// The size and modification time of each input file stand in for its contents, which would take a full read
+	private static Map<String, String> getInputFingerprints() throws IOException {
+		Map<String, String> inputFingerprints = new LinkedHashMap<>();
+		for (String inputFilePath : Arrays.asList(
+			Main.getDiseaseGenesFilePath(), Main.getHighPriorityVariantsFilePath(), Main.getAbridgedCosmicFilePath()
+		)) {
+			inputFingerprints.put(inputFilePath, getFingerprint(Paths.get(inputFilePath)));
+		}
+
+		// A merge limited to the affected variants of an ingest is only resumed limited to the same ones
+		String affectedVariantsFile = System.getProperty(Main.affectedVariantsFileProperty);
+		inputFingerprints.put(
+			Main.affectedVariantsFileProperty,
+			affectedVariantsFile != null ? getFingerprint(Paths.get(affectedVariantsFile)) : "all variants"
+		);
+		return inputFingerprints;
+	}
+
+	private static String getFingerprint(Path inputPath) throws IOException {
+		return Files.size(inputPath) + ":" + Files.getLastModifiedTime(inputPath).toMillis();
+	}
+
+	private static void truncate(Path filePath, long length) throws IOException {
+		try (FileChannel fileChannel = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+			if (fileChannel.size() < length) {
+				throw new IllegalStateException(
+					filePath + " is shorter than the " + length + " bytes written when " + checkpointFile + " was saved"
+				);
+			}
+			fileChannel.truncate(length);
+		}
+	}
+}
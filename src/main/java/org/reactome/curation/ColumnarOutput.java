@@ -0,0 +1,476 @@
+package org.reactome.curation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A typed, column-oriented copy of merged.txt which consumers can memory map and scan a column at a time without
+ * tokenizing text.  All numbers are little-endian, every column's data and every section of it starts on an 8 byte
+ * boundary, and offsets are longs, so neither the file nor a column is limited to 2 GB.  The writer streams each
+ * section of each column to a temporary file while it reads merged.txt and then copies the sections into place, so
+ * it holds no more than a buffer per section.
+ *
+ * <pre>
+ * "VACOLS02"                           magic
+ * int columnCount, long rowCount
+ * per column: short nameLength, name (UTF-8), byte type, long dataOffset, long dataLength
+ * per column data, by type, each section padded to 8 bytes:
+ *   UTF8        long[rowCount + 1] offsets into the bytes, bytes
+ *   INT32       int[rowCount] values, byte[rowCount] validity (0 for an empty value)
+ *   BOOLEAN     byte[rowCount] with 1 for yes, 0 for no and -1 for an empty value
+ *   LIST_UTF8   long[rowCount + 1] offsets into the elements, long[elementCount + 1] offsets into the bytes, bytes
+ *   LIST_INT64  long[rowCount + 1] offsets into the elements, long[elementCount]
+ * </pre>
+ */
+public class ColumnarOutput {
+	static final String columnarOutputFile = "merged.cols";
+
+	private static final byte[] MAGIC = "VACOLS02".getBytes(StandardCharsets.US_ASCII);
+	// A multiple of 8, so no value in an aligned section spans two mapped segments
+	private static final long segmentBytes = 1L << 30;
+
+	public static final byte UTF8 = 0;
+	public static final byte INT32 = 1;
+	public static final byte BOOLEAN = 2;
+	public static final byte LIST_UTF8 = 3;
+	public static final byte LIST_INT64 = 4;
+
+	// Types of the merged.txt columns, in the order of Main.getOutputHeaderLine()
+	private static final byte[] COLUMN_TYPES = {
+		UTF8, UTF8, UTF8, UTF8,
+		LIST_UTF8, LIST_UTF8, UTF8, UTF8,
+		UTF8, LIST_INT64, LIST_INT64,
+		UTF8, LIST_UTF8, LIST_UTF8, UTF8, UTF8,
+		INT32, BOOLEAN, BOOLEAN
+	};
+
+	// A single mapping cannot be larger than 2 GB, so the file is mapped in segments
+	private final List<MappedByteBuffer> mappedSegments;
+	private final List<String> columnNames = new ArrayList<>();
+	private final List<Byte> columnTypes = new ArrayList<>();
+	private final List<Long> columnDataOffsets = new ArrayList<>();
+	private final long rowCount;
+
+	private ColumnarOutput(List<MappedByteBuffer> mappedSegments) {
+		this.mappedSegments = mappedSegments;
+
+		// The header is far smaller than a segment, so it is read from the first one
+		ByteBuffer header = this.mappedSegments.get(0).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IllegalArgumentException("Not a columnar merged output file");
+		}
+
+		int columnCount = header.getInt();
+		this.rowCount = header.getLong();
+		for (int column = 0; column < columnCount; column++) {
+			byte[] columnName = new byte[header.getShort()];
+			header.get(columnName);
+
+			this.columnNames.add(new String(columnName, StandardCharsets.UTF_8));
+			this.columnTypes.add(header.get());
+			this.columnDataOffsets.add(header.getLong());
+			header.getLong();
+		}
+	}
+
+	public static ColumnarOutput open(Path columnarFilePath) throws IOException {
+		try (FileChannel columnarFile = FileChannel.open(columnarFilePath, StandardOpenOption.READ)) {
+			long columnarFileBytes = columnarFile.size();
+			if (columnarFileBytes < MAGIC.length) {
+				throw new IllegalArgumentException("Not a columnar merged output file");
+			}
+
+			List<MappedByteBuffer> mappedSegments = new ArrayList<>();
+			for (long segmentStart = 0; segmentStart < columnarFileBytes; segmentStart += segmentBytes) {
+				MappedByteBuffer mappedSegment = columnarFile.map(
+					FileChannel.MapMode.READ_ONLY, segmentStart, Math.min(segmentBytes, columnarFileBytes - segmentStart)
+				);
+				mappedSegment.order(ByteOrder.LITTLE_ENDIAN);
+				mappedSegments.add(mappedSegment);
+			}
+			return new ColumnarOutput(mappedSegments);
+		}
+	}
+
+	/**
+	 * Writes the columnar copy of a merged.txt file.  Lists are split on the commas the text output joins them with,
+	 * so an empty text value becomes an empty list.  The sections are written to a temporary directory next to the
+	 * columnar file, as together they are as large as it is.
+	 */
+	public static void write(Path mergedFilePath, Path columnarFilePath) throws IOException {
+		String[] columnNames = Main.getOutputHeaderLine().trim().split("\t");
+
+		Path sectionDir = Files.createTempDirectory(
+			columnarFilePath.toAbsolutePath().getParent(), columnarFilePath.getFileName() + "."
+		);
+		try {
+			List<ColumnWriter> columnWriters = new ArrayList<>();
+			long rowCount = 0;
+			try {
+				for (int column = 0; column < columnNames.length; column++) {
+					columnWriters.add(new ColumnWriter(COLUMN_TYPES[column], sectionDir, column));
+				}
+
+				try (BufferedReader mergedFileReader = Files.newBufferedReader(mergedFilePath, Charset.defaultCharset())) {
+					String header = mergedFileReader.readLine();
+					GenericRecord.checkHeader(mergedFilePath.toString(), String.join("\t", columnNames), header);
+
+					String outputLine;
+					while ((outputLine = mergedFileReader.readLine()) != null) {
+						String[] fields = outputLine.split("\t", -1);
+						for (int column = 0; column < columnNames.length; column++) {
+							columnWriters.get(column).add(column < fields.length ? fields[column] : "");
+						}
+						rowCount++;
+					}
+				}
+			} finally {
+				for (ColumnWriter columnWriter : columnWriters) {
+					columnWriter.close();
+				}
+			}
+
+			writeColumnarFile(columnarFilePath, columnNames, rowCount, columnWriters);
+		} finally {
+			try (Stream<Path> sectionPaths = Files.walk(sectionDir)) {
+				// Deletes the section files before the directory itself
+				sectionPaths.sorted(Comparator.reverseOrder()).forEach(sectionPath -> {
+					try {
+						Files.delete(sectionPath);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+			}
+		}
+	}
+
+	private static void writeColumnarFile(
+		Path columnarFilePath, String[] columnNames, long rowCount, List<ColumnWriter> columnWriters
+	) throws IOException {
+		int headerLength = MAGIC.length + Integer.BYTES + Long.BYTES;
+		for (String columnName : columnNames) {
+			headerLength += Short.BYTES + columnName.getBytes(StandardCharsets.UTF_8).length + 1 + 2 * Long.BYTES;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate((int) align(headerLength)).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(columnNames.length);
+		header.putLong(rowCount);
+		long dataOffset = header.capacity();
+		for (int column = 0; column < columnNames.length; column++) {
+			byte[] columnName = columnNames[column].getBytes(StandardCharsets.UTF_8);
+			long dataLength = columnWriters.get(column).getDataLength();
+			header.putShort((short) columnName.length);
+			header.put(columnName);
+			header.put(COLUMN_TYPES[column]);
+			header.putLong(dataOffset);
+			header.putLong(dataLength);
+
+			dataOffset += align(dataLength);
+		}
+		header.rewind();
+
+		try (FileChannel columnarFile = FileChannel.open(
+			columnarFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+		)) {
+			writeFully(columnarFile, header);
+			for (ColumnWriter columnWriter : columnWriters) {
+				for (Section section : columnWriter.getSections()) {
+					section.copyTo(columnarFile);
+				}
+			}
+		}
+	}
+
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(this.columnNames);
+	}
+
+	public byte getColumnType(String columnName) {
+		return this.columnTypes.get(getColumn(columnName));
+	}
+
+	public String getString(String columnName, long row) {
+		long dataOffset = getColumnData(columnName, UTF8);
+		long bytesOffset = dataOffset + align((this.rowCount + 1) * Long.BYTES);
+
+		return decode(
+			bytesOffset + readLong(dataOffset + row * Long.BYTES),
+			bytesOffset + readLong(dataOffset + (row + 1) * Long.BYTES)
+		);
+	}
+
+	public Integer getInt(String columnName, long row) {
+		long dataOffset = getColumnData(columnName, INT32);
+		long validityOffset = dataOffset + align(this.rowCount * Integer.BYTES);
+
+		return readByte(validityOffset + row) != 0 ? readInt(dataOffset + row * Integer.BYTES) : null;
+	}
+
+	public Boolean getBoolean(String columnName, long row) {
+		byte value = readByte(getColumnData(columnName, BOOLEAN) + row);
+		return value < 0 ? null : value == 1;
+	}
+
+	public List<String> getStringList(String columnName, long row) {
+		long dataOffset = getColumnData(columnName, LIST_UTF8);
+		long firstElement = readLong(dataOffset + row * Long.BYTES);
+		long lastElement = readLong(dataOffset + (row + 1) * Long.BYTES);
+		long elementOffsetsOffset = dataOffset + align((this.rowCount + 1) * Long.BYTES);
+		long elementCount = readLong(dataOffset + this.rowCount * Long.BYTES);
+		long bytesOffset = elementOffsetsOffset + align((elementCount + 1) * Long.BYTES);
+
+		List<String> values = new ArrayList<>();
+		for (long element = firstElement; element < lastElement; element++) {
+			values.add(decode(
+				bytesOffset + readLong(elementOffsetsOffset + element * Long.BYTES),
+				bytesOffset + readLong(elementOffsetsOffset + (element + 1) * Long.BYTES)
+			));
+		}
+		return values;
+	}
+
+	public List<Long> getLongList(String columnName, long row) {
+		long dataOffset = getColumnData(columnName, LIST_INT64);
+		long firstElement = readLong(dataOffset + row * Long.BYTES);
+		long lastElement = readLong(dataOffset + (row + 1) * Long.BYTES);
+		long valuesOffset = dataOffset + align((this.rowCount + 1) * Long.BYTES);
+
+		List<Long> values = new ArrayList<>();
+		for (long element = firstElement; element < lastElement; element++) {
+			values.add(readLong(valuesOffset + element * Long.BYTES));
+		}
+		return values;
+	}
+
+	private int getColumn(String columnName) {
+		int column = this.columnNames.indexOf(columnName);
+		if (column == -1) {
+			throw new IllegalArgumentException("No column named " + columnName);
+		}
+		return column;
+	}
+
+	private long getColumnData(String columnName, byte expectedType) {
+		int column = getColumn(columnName);
+		if (this.columnTypes.get(column) != expectedType) {
+			throw new IllegalArgumentException(
+				columnName + " has type " + this.columnTypes.get(column) + " rather than " + expectedType
+			);
+		}
+		return this.columnDataOffsets.get(column);
+	}
+
+	private byte readByte(long position) {
+		return getMappedSegment(position).get(getSegmentOffset(position));
+	}
+
+	private int readInt(long position) {
+		return getMappedSegment(position).getInt(getSegmentOffset(position));
+	}
+
+	private long readLong(long position) {
+		return getMappedSegment(position).getLong(getSegmentOffset(position));
+	}
+
+	private MappedByteBuffer getMappedSegment(long position) {
+		return this.mappedSegments.get((int) (position / segmentBytes));
+	}
+
+	private static int getSegmentOffset(long position) {
+		return (int) (position % segmentBytes);
+	}
+
+	private String decode(long start, long end) {
+		byte[] bytes = new byte[Math.toIntExact(end - start)];
+		for (int byteIndex = 0; byteIndex < bytes.length; byteIndex++) {
+			bytes[byteIndex] = readByte(start + byteIndex);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static List<String> splitList(String value) {
+		return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(",", -1));
+	}
+
+	private static long align(long length) {
+		return (length + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+	}
+
+	private static void writeFully(FileChannel fileChannel, ByteBuffer data) throws IOException {
+		while (data.hasRemaining()) {
+			fileChannel.write(data);
+		}
+	}
+
+	/**
+	 * Streams the sections of one column's data, in the order the format lays them out, each to its own file.
+	 */
+	private static class ColumnWriter implements Closeable {
+		private byte type;
+		private List<Section> sections = new ArrayList<>();
+		private long elementCount;
+
+		private ColumnWriter(byte type, Path sectionDir, int column) throws IOException {
+			this.type = type;
+
+			int sectionCount = type == BOOLEAN ? 1 : type == LIST_UTF8 ? 3 : 2;
+			for (int section = 0; section < sectionCount; section++) {
+				this.sections.add(new Section(sectionDir.resolve(column + "-" + section)));
+			}
+
+			// Each offsets section starts with the offset of the first value
+			switch (type) {
+				case UTF8:
+				case LIST_INT64:
+					this.sections.get(0).putLong(0);
+					break;
+				case LIST_UTF8:
+					this.sections.get(0).putLong(0);
+					this.sections.get(1).putLong(0);
+					break;
+				case INT32:
+				case BOOLEAN:
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown column type " + type);
+			}
+		}
+
+		private void add(String value) throws IOException {
+			switch (this.type) {
+				case UTF8:
+					addString(value, this.sections.get(0), this.sections.get(1));
+					break;
+				case INT32:
+					this.sections.get(0).putInt(value.isEmpty() ? 0 : Integer.parseInt(value));
+					this.sections.get(1).put((byte) (value.isEmpty() ? 0 : 1));
+					break;
+				case BOOLEAN:
+					Boolean booleanValue = ParseUtilities.getBooleanFromYesNo(value);
+					this.sections.get(0).put((byte) (booleanValue == null ? -1 : booleanValue ? 1 : 0));
+					break;
+				case LIST_UTF8:
+					for (String element : splitList(value)) {
+						addString(element, this.sections.get(1), this.sections.get(2));
+						this.elementCount++;
+					}
+					this.sections.get(0).putLong(this.elementCount);
+					break;
+				case LIST_INT64:
+					for (String element : splitList(value)) {
+						this.sections.get(1).putLong(Long.parseLong(element));
+						this.elementCount++;
+					}
+					this.sections.get(0).putLong(this.elementCount);
+					break;
+			}
+		}
+
+		// The offset after a string is the length of the bytes section once it is added
+		private static void addString(String value, Section offsets, Section bytes) throws IOException {
+			bytes.put(value.getBytes(StandardCharsets.UTF_8));
+			offsets.putLong(bytes.getLength());
+		}
+
+		private List<Section> getSections() {
+			return this.sections;
+		}
+
+		// Every section but the last is padded to 8 bytes
+		private long getDataLength() {
+			long dataLength = 0;
+			for (Section section : this.sections) {
+				dataLength = align(dataLength) + section.getLength();
+			}
+			return dataLength;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (Section section : this.sections) {
+				section.close();
+			}
+		}
+	}
+
+	private static class Section implements Closeable {
+		private Path filePath;
+		private OutputStream stream;
+		private ByteBuffer value = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		private long length;
+
+		private Section(Path filePath) throws IOException {
+			this.filePath = filePath;
+			this.stream = new BufferedOutputStream(Files.newOutputStream(filePath));
+		}
+
+		private void put(byte value) throws IOException {
+			this.stream.write(value);
+			this.length++;
+		}
+
+		private void put(byte[] values) throws IOException {
+			this.stream.write(values);
+			this.length += values.length;
+		}
+
+		private void putInt(int value) throws IOException {
+			this.value.clear();
+			this.value.putInt(value);
+			writeValue();
+		}
+
+		private void putLong(long value) throws IOException {
+			this.value.clear();
+			this.value.putLong(value);
+			writeValue();
+		}
+
+		private void writeValue() throws IOException {
+			this.stream.write(this.value.array(), 0, this.value.position());
+			this.length += this.value.position();
+		}
+
+		private long getLength() {
+			return this.length;
+		}
+
+		// Appends the section and pads it to 8 bytes, so whatever follows starts aligned
+		private void copyTo(FileChannel columnarFile) throws IOException {
+			try (FileChannel sectionFile = FileChannel.open(this.filePath, StandardOpenOption.READ)) {
+				long position = 0;
+				while (position < this.length) {
+					position += sectionFile.transferTo(position, this.length - position, columnarFile);
+				}
+			}
+			writeFully(columnarFile, ByteBuffer.allocate((int) (align(this.length) - this.length)));
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.stream.close();
+		}
+	}
+}
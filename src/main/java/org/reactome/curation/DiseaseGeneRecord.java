@@ -5,6 +5,8 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.reactome.curation.GenericRecord.getField;
+import static org.reactome.curation.GenericRecord.getLongListField;
+import static org.reactome.curation.GenericRecord.getReleaseVersionField;
 import static org.reactome.curation.ParseUtilities.*;
 
 public class DiseaseGeneRecord {
@@ -54,14 +56,14 @@ public class DiseaseGeneRecord {
 		this.mutation = getField(tsvLine, currentField++);
 		this.gofLofNull = getField(tsvLine, currentField++);
 		this.wtReactomePathway = getField(tsvLine, currentField++);
-		this.selectedPubMedIds = convertStringListToLongList(getListFromCSVString(getField(tsvLine, currentField++)));
-		List<Long> cosmicPubMedIds = convertStringListToLongList(getListFromCSVString(getField(tsvLine, currentField++)));
+		this.selectedPubMedIds = getLongListField(tsvLine, currentField++);
+		List<Long> cosmicPubMedIds = getLongListField(tsvLine, currentField++);
 		this.curator = getField(tsvLine, currentField++);
 		this.consequence = getListFromCSVString(getField(tsvLine, currentField++));
 		this.normalReaction = getListFromCSVString(getField(tsvLine, currentField++));
 		this.comments = getField(tsvLine, currentField++);
 		String status = getField(tsvLine, currentField++);
-		int releaseVersion = parseReleaseVersion((getField(tsvLine, currentField++)));
+		int releaseVersion = getReleaseVersionField(tsvLine, currentField++);
 
 		this.commonAnnotations = new CommonAnnotations.Builder()
 			.withRecordLine(tsvLine)
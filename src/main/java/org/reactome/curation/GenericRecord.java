@@ -1,11 +1,12 @@
 package org.reactome.curation;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class GenericRecord {
@@ -13,30 +14,87 @@ public class GenericRecord {
 	public static <E> List<E> parseRecords(
 		String tsvFilePath, String expectedHeader, Function<String, ? extends E> recordMapper
 	) throws IOException {
+		return parseRecords(tsvFilePath, expectedHeader, recordMapper, tsvLine -> true);
+	}
+
+	public static <E> List<E> parseRecords(
+		String tsvFilePath, String expectedHeader, Function<String, ? extends E> recordMapper,
+		Predicate<String> tsvLineFilter
+	) throws IOException {
+		MergeEvents.InputFileParsed inputFileParsedEvent = new MergeEvents.InputFileParsed();
+		inputFileParsedEvent.begin();
+
+		// Lines are read as they are parsed, so the lines the filter drops are never all held at once
+		List<E> records;
+		try (BufferedReader tsvFileReader = Files.newBufferedReader(Paths.get(tsvFilePath))) {
+			checkHeader(tsvFilePath, expectedHeader, tsvFileReader.readLine());
 
-		List<String> tsvFileLines = Files.readAllLines(Paths.get(tsvFilePath));
+			records = tsvFileReader
+				.lines()
+				.filter(tsvLineFilter)
+				.map(recordMapper)
+				.collect(Collectors.toList());
+		}
 
-		String header = tsvFileLines.remove(0);
-		if (!header.equals(expectedHeader)) {
+		inputFileParsedEvent.commit(tsvFilePath, records.size());
+		return records;
+	}
+
+	public static void checkHeader(String tsvFilePath, String expectedHeader, String header) {
+		if (!expectedHeader.equals(header)) {
 			throw new IllegalArgumentException(
 				tsvFilePath + " does not have the expected header.\n" +
 				"\tExpected: " + expectedHeader + "\n" +
 				"\tReceived: " + header + "\n");
 		}
-
-		return tsvFileLines
-			.stream()
-			.map(recordMapper)
-			.collect(Collectors.toList());
 	}
 
+	// Scans only as far as the requested field rather than splitting the whole line
 	public static String getField(String tsvLine, int fieldIndex) {
-		List<String> fields = Arrays.asList(tsvLine.split("\t"));
+		int fieldStart = getFieldStart(tsvLine, fieldIndex);
+		return tsvLine.substring(fieldStart, getFieldEnd(tsvLine, fieldStart));
+	}
 
-		if (fieldIndex >= fields.size()) {
-			return "";
+	public static Boolean getYesNoField(String tsvLine, int fieldIndex) {
+		int fieldStart = getFieldStart(tsvLine, fieldIndex);
+		return ParseUtilities.getBooleanFromYesNo(tsvLine, fieldStart, getFieldEnd(tsvLine, fieldStart));
+	}
+
+	public static int getReleaseVersionField(String tsvLine, int fieldIndex) {
+		int fieldStart = getFieldStart(tsvLine, fieldIndex);
+		return ParseUtilities.parseReleaseVersion(tsvLine, fieldStart, getFieldEnd(tsvLine, fieldStart));
+	}
+
+	public static int getIntField(String tsvLine, int fieldIndex) {
+		int fieldStart = getFieldStart(tsvLine, fieldIndex);
+		return ParseUtilities.convertToInt(tsvLine, fieldStart, getFieldEnd(tsvLine, fieldStart));
+	}
+
+	public static long getLongField(String tsvLine, int fieldIndex) {
+		int fieldStart = getFieldStart(tsvLine, fieldIndex);
+		return ParseUtilities.parseLong(tsvLine, fieldStart, getFieldEnd(tsvLine, fieldStart));
+	}
+
+	public static List<Long> getLongListField(String tsvLine, int fieldIndex) {
+		int fieldStart = getFieldStart(tsvLine, fieldIndex);
+		return ParseUtilities.parseLongList(tsvLine, fieldStart, getFieldEnd(tsvLine, fieldStart));
+	}
+
+	// A field missing from the line starts and ends at the end of the line, so it reads as empty
+	private static int getFieldStart(String tsvLine, int fieldIndex) {
+		int fieldStart = 0;
+		for (int field = 0; field < fieldIndex; field++) {
+			int tabIndex = tsvLine.indexOf('\t', fieldStart);
+			if (tabIndex == -1) {
+				return tsvLine.length();
+			}
+			fieldStart = tabIndex + 1;
 		}
+		return fieldStart;
+	}
 
-		return fields.get(fieldIndex);
+	private static int getFieldEnd(String tsvLine, int fieldStart) {
+		int fieldEnd = tsvLine.indexOf('\t', fieldStart);
+		return fieldEnd != -1 ? fieldEnd : tsvLine.length();
 	}
 }
@@ -4,8 +4,8 @@ import java.io.IOException;
 import java.util.List;
 
 import static org.reactome.curation.GenericRecord.getField;
-import static org.reactome.curation.ParseUtilities.convertToInt;
-import static org.reactome.curation.ParseUtilities.getBooleanFromYesNo;
+import static org.reactome.curation.GenericRecord.getIntField;
+import static org.reactome.curation.GenericRecord.getYesNoField;
 
 public class HighPriorityVariantRecord {
 	private final static String EXPECTED_HEADER = String.join(
@@ -26,8 +26,8 @@ public class HighPriorityVariantRecord {
 		int currentField = 0;
 
 		String variantName = getField(tsvLine, currentField++);
-		this.count = convertToInt(getField(tsvLine, currentField++));
-		Boolean isProteinInReactome = getBooleanFromYesNo(getField(tsvLine, currentField++));
+		this.count = getIntField(tsvLine, currentField++);
+		Boolean isProteinInReactome = getYesNoField(tsvLine, currentField++);
 		this.geneHasVariantsInReactome = getField(tsvLine, currentField++);
 		this.specificVariantsInReactome = getField(tsvLine, currentField++);
 
@@ -0,0 +1,205 @@
+package org.reactome.curation;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.lineSeparator;
+import static org.reactome.curation.ConcurrencyUtilities.getResult;
+
+/**
+ * Checks the three input files for the errors a merge would report without merging them or writing any output.  The
+ * headers are checked while parsing, then the records are checked in parallel batches of consecutive ordinals for
+ * abridged cosmic records with differences and for status, release version and protein in Reactome mismatches.  The
+ * batches are taken in ordinal order, and once the batches up to one have as many errors as asked for, the batches
+ * after it are cancelled, so the errors printed are the first ones merged.err would list.  The run fails if there are
+ * any.
+ */
+public class InputValidation {
+	private static final int recordsPerBatch = 256;
+
+	public static void run(int maxErrors) throws IOException, InterruptedException {
+		if (maxErrors < 1) {
+			throw new IllegalArgumentException(
+				"The number of errors to stop after must be at least 1, but received " + maxErrors
+			);
+		}
+
+		List<DiseaseGeneRecord> diseaseGeneRecords = Main.parseDiseaseGeneRecords();
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords = Main.parseHighPriorityVariantRecords();
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
+			Main.getVariantNameToAbridgedCosmicRecords(
+				Main.getCuratedVariantNameFilter(diseaseGeneRecords, allHighPriorityVariantRecords)
+			);
+
+		RecordChecker recordChecker = new RecordChecker(
+			diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords
+		);
+
+		// Batches cover the disease gene records and then the high priority variant records, in ordinal order
+		List<long[]> batchOrdinalRanges = new ArrayList<>();
+		addBatchOrdinalRanges(batchOrdinalRanges, Main.DISEASE_GENE_PASS, diseaseGeneRecords.size());
+		addBatchOrdinalRanges(
+			batchOrdinalRanges, Main.HIGH_PRIORITY_VARIANT_PASS, allHighPriorityVariantRecords.size()
+		);
+
+		// No batch after this one is needed once the batches up to it have as many errors as are printed
+		AtomicInteger lastNeededBatch = new AtomicInteger(batchOrdinalRanges.size() - 1);
+		SortedMap<Long, List<String>> ordinalToErrors = new TreeMap<>();
+		int errorCount = 0;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			// The pool takes the batches in the order they are submitted
+			List<Future<SortedMap<Long, List<String>>>> batchErrors = new ArrayList<>();
+			for (int batch = 0; batch < batchOrdinalRanges.size(); batch++) {
+				int batchIndex = batch;
+				long[] batchOrdinalRange = batchOrdinalRanges.get(batchIndex);
+
+				batchErrors.add(executorService.submit(() -> {
+					SortedMap<Long, List<String>> batchOrdinalToErrors = new TreeMap<>();
+					for (long ordinal = batchOrdinalRange[0]; ordinal < batchOrdinalRange[1]; ordinal++) {
+						if (batchIndex > lastNeededBatch.get()) {
+							break;
+						}
+
+						List<String> errors = recordChecker.getErrors(ordinal);
+						if (!errors.isEmpty()) {
+							batchOrdinalToErrors.put(ordinal, errors);
+						}
+					}
+					return batchOrdinalToErrors;
+				}));
+			}
+
+			for (int batchIndex = 0; batchIndex < batchErrors.size() && errorCount < maxErrors; batchIndex++) {
+				SortedMap<Long, List<String>> batchOrdinalToErrors = getResult(batchErrors.get(batchIndex));
+				for (List<String> errors : batchOrdinalToErrors.values()) {
+					errorCount += errors.size();
+				}
+				ordinalToErrors.putAll(batchOrdinalToErrors);
+
+				if (errorCount >= maxErrors) {
+					lastNeededBatch.set(batchIndex);
+					for (Future<SortedMap<Long, List<String>>> unneededBatchErrors :
+						batchErrors.subList(batchIndex + 1, batchErrors.size())) {
+						unneededBatchErrors.cancel(false);
+					}
+				}
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		int printedErrorCount = 0;
+		for (List<String> errors : ordinalToErrors.values()) {
+			for (String error : errors) {
+				if (printedErrorCount < maxErrors) {
+					System.out.print(error.concat(lineSeparator()));
+					printedErrorCount++;
+				}
+			}
+		}
+
+		if (errorCount > printedErrorCount) {
+			System.out.println("Stopped after the first " + printedErrorCount + " error(s)");
+		}
+		if (errorCount > 0) {
+			throw new IllegalStateException("The input files are not consistent");
+		}
+		System.out.println(recordChecker.getVariantCount() + " variant(s) checked with no errors");
+	}
+
+	private static void addBatchOrdinalRanges(List<long[]> batchOrdinalRanges, int pass, int recordCount) {
+		for (int firstIndex = 0; firstIndex < recordCount; firstIndex += recordsPerBatch) {
+			batchOrdinalRanges.add(new long[] {
+				Main.getRecordOrdinal(pass, firstIndex),
+				Main.getRecordOrdinal(pass, Math.min(firstIndex + recordsPerBatch, recordCount))
+			});
+		}
+	}
+
+	/**
+	 * Gives the errors the merge would give each record, except that a high priority variant with no abridged cosmic
+	 * records is reported rather than failing the check.  What depends only on the variant is worked out once for it
+	 * and shared by the batches.
+	 */
+	private static class RecordChecker {
+		private List<DiseaseGeneRecord> diseaseGeneRecords;
+		private List<HighPriorityVariantRecord> allHighPriorityVariantRecords;
+		private Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords;
+		private Map<String, List<HighPriorityVariantRecord>> variantNameToHighPriorityVariantRecords;
+
+		private ConcurrentMap<String, String> variantNameToDifferencesError = new ConcurrentHashMap<>();
+		private ConcurrentMap<String, List<String>> variantNameToHighPriorityVariantMismatches =
+			new ConcurrentHashMap<>();
+
+		private RecordChecker(
+			List<DiseaseGeneRecord> diseaseGeneRecords,
+			List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
+			Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords
+		) {
+			this.diseaseGeneRecords = diseaseGeneRecords;
+			this.allHighPriorityVariantRecords = allHighPriorityVariantRecords;
+			this.variantNameToAbridgedCosmicRecords = variantNameToAbridgedCosmicRecords;
+			this.variantNameToHighPriorityVariantRecords =
+				Main.groupHighPriorityVariantRecords(allHighPriorityVariantRecords);
+		}
+
+		private int getVariantCount() {
+			Set<String> variantNames = new HashSet<>(this.variantNameToHighPriorityVariantRecords.keySet());
+			for (DiseaseGeneRecord diseaseGeneRecord : this.diseaseGeneRecords) {
+				variantNames.add(diseaseGeneRecord.getVariantName());
+			}
+			return variantNames.size();
+		}
+
+		private List<String> getErrors(long ordinal) {
+			int recordIndex = Main.getRecordIndex(ordinal);
+
+			if (Main.getRecordPass(ordinal) == Main.DISEASE_GENE_PASS) {
+				DiseaseGeneRecord diseaseGeneRecord = this.diseaseGeneRecords.get(recordIndex);
+				String variantName = diseaseGeneRecord.getVariantName();
+				List<AbridgedCosmicRecord> abridgedCosmicRecords = getAbridgedCosmicRecords(variantName);
+				if (abridgedCosmicRecords.isEmpty()) {
+					return Collections.emptyList();
+				}
+
+				return Main.getErrors(
+					abridgedCosmicRecords,
+					diseaseGeneRecord,
+					getDifferencesError(variantName, abridgedCosmicRecords),
+					this.variantNameToHighPriorityVariantMismatches.computeIfAbsent(
+						variantName,
+						name -> Main.getMismatches(
+							this.variantNameToHighPriorityVariantRecords.getOrDefault(name, Collections.emptyList()),
+							abridgedCosmicRecords.get(0)
+						)
+					)
+				);
+			}
+
+			HighPriorityVariantRecord highPriorityVariantRecord = this.allHighPriorityVariantRecords.get(recordIndex);
+			String variantName = highPriorityVariantRecord.getVariantName();
+			List<AbridgedCosmicRecord> abridgedCosmicRecords = getAbridgedCosmicRecords(variantName);
+			if (abridgedCosmicRecords.isEmpty()) {
+				return Collections.singletonList(Main.getNoAbridgedCosmicRecordsError(variantName));
+			}
+
+			return Main.getErrors(
+				abridgedCosmicRecords, highPriorityVariantRecord, getDifferencesError(variantName, abridgedCosmicRecords)
+			);
+		}
+
+		private List<AbridgedCosmicRecord> getAbridgedCosmicRecords(String variantName) {
+			return this.variantNameToAbridgedCosmicRecords.getOrDefault(variantName, Collections.emptyList());
+		}
+
+		private String getDifferencesError(String variantName, List<AbridgedCosmicRecord> abridgedCosmicRecords) {
+			return this.variantNameToDifferencesError.computeIfAbsent(
+				variantName, name -> Main.checkForAbridgedCosmicRecordDifferencesError(name, abridgedCosmicRecords)
+			);
+		}
+	}
+}
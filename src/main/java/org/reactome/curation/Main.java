@@ -1,10 +1,16 @@
 package org.reactome.curation;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static java.lang.System.lineSeparator;
@@ -15,33 +21,172 @@ import static org.reactome.curation.HighPriorityVariantRecord.getIsProteinInReac
 import static org.reactome.curation.ParseUtilities.equalOrBothNull;
 
 public class Main {
-	private static final String tsvDir = "src/main/resources";
-	private static final String outputFile = "merged.txt";
-	private static final String errorFile = "merged.err";
+	static final String tsvDir = "src/main/resources";
+	static final String outputFile = "merged.txt";
+	static final String errorFile = "merged.err";
+
+	static final String offHeapCosmicRecordsProperty = "variantAnnotation.offHeapCosmicRecords";
+	static final String columnarOutputProperty = "variantAnnotation.columnarOutput";
+	static final String prefilterCosmicRecordsProperty = "variantAnnotation.prefilterCosmicRecords";
+	static final String affectedVariantsFileProperty = "variantAnnotation.affectedVariantsFile";
+
+	static final int DISEASE_GENE_PASS = 0;
+	static final int HIGH_PRIORITY_VARIANT_PASS = 1;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0 && args[0].equals("pipelined")) {
+			PipelinedMerge.run(parseDiseaseGeneRecords(), parseHighPriorityVariantRecords());
+			return;
+		} else if (args.length > 0 && args[0].equals("shard")) {
+			ShardedMerge.runShard(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Paths.get(args[3]));
+			return;
+		} else if (args.length > 0 && args[0].equals("reassemble")) {
+			ShardedMerge.reassemble(Integer.parseInt(args[1]), Paths.get(args[2]));
+			return;
+		} else if (args.length > 0 && args[0].equals("batch")) {
+			BatchMerge.run(args[1]);
+			return;
+		} else if (args.length > 0 && args[0].equals("diff")) {
+			MergedOutputDiff.run(Paths.get(args[1]), Paths.get(args[2]), Paths.get(args[3]));
+			return;
+		} else if (args.length > 0 && args[0].equals("resume")) {
+			CheckpointedMerge.resume();
+			return;
+		} else if (args.length > 0 && args[0].equals("validate")) {
+			InputValidation.run(args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE);
+			return;
+		} else if (args.length > 0 && args[0].equals("partitioned")) {
+			PartitionedOutput.write(Integer.parseInt(args[1]), Paths.get(args[2]));
+			return;
+		} else if (args.length > 0 && args[0].equals("concatenate")) {
+			PartitionedOutput.concatenate(Paths.get(args[1]));
+			return;
+		} else if (args.length > 0 && args[0].equals("ingest")) {
+			AbridgedCosmicRecordStore.ingest(Paths.get(args.length > 1 ? args[1] : getAbridgedCosmicFilePath()));
+			return;
+		} else if (args.length > 0 && args[0].equals("history")) {
+			AnnotationHistory.run(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 
-	public static void main(String[] args) throws IOException {
 		Files.deleteIfExists(Paths.get(outputFile));
 		Files.deleteIfExists(Paths.get(errorFile));
+		Files.deleteIfExists(Paths.get(CheckpointedMerge.checkpointFile));
+
+		List<DiseaseGeneRecord> diseaseGeneRecords = parseDiseaseGeneRecords();
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords = parseHighPriorityVariantRecords();
+
+		MergePlanner mergePlanner = MergePlanner.plan(diseaseGeneRecords, allHighPriorityVariantRecords);
+		mergePlanner.log();
+		if (mergePlanner.getStrategy() == MergePlanner.Strategy.PIPELINED) {
+			PipelinedMerge.run(diseaseGeneRecords, allHighPriorityVariantRecords);
+			return;
+		} else if (mergePlanner.getStrategy() == MergePlanner.Strategy.SPILLED) {
+			mergePlanner.runSpilled(diseaseGeneRecords, allHighPriorityVariantRecords);
+			return;
+		}
+
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
+			getVariantNameToAbridgedCosmicRecords(
+				getCuratedVariantNameFilter(diseaseGeneRecords, allHighPriorityVariantRecords)
+			);
+
+		CheckpointedMerge.run(diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords);
+		writeColumnarOutputIfRequested();
+	}
+
+	static void writeColumnarOutputIfRequested() throws IOException {
+		if (Boolean.getBoolean(columnarOutputProperty)) {
+			ColumnarOutput.write(Paths.get(outputFile), Paths.get(ColumnarOutput.columnarOutputFile));
+		}
+	}
 
-		List<DiseaseGeneRecord> diseaseGeneRecords = DiseaseGeneRecord.parseDiseaseGeneRecords(
-			Paths.get(tsvDir, "DiseaseGenes.tsv").toString()
+	static List<DiseaseGeneRecord> parseDiseaseGeneRecords() throws IOException {
+		return getAffectedRecords(
+			DiseaseGeneRecord.parseDiseaseGeneRecords(getDiseaseGenesFilePath()), DiseaseGeneRecord::getVariantName
 		);
-		List<HighPriorityVariantRecord> allHighPriorityVariantRecords = HighPriorityVariantRecord.parseHighPriorityVariantRecords(
-			Paths.get(tsvDir, "HighPriorityVariants5.tsv").toString()
+	}
+
+	static List<HighPriorityVariantRecord> parseHighPriorityVariantRecords() throws IOException {
+		return getAffectedRecords(
+			HighPriorityVariantRecord.parseHighPriorityVariantRecords(getHighPriorityVariantsFilePath()),
+			HighPriorityVariantRecord::getVariantName
 		);
+	}
 
-		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
-			AbridgedCosmicRecord.parseAbridgedCosmicRecords(
-				Paths.get(tsvDir, "Abridged-NoPubMed.tsv").toString()
-			)
-			.stream()
-			.collect(Collectors.groupingBy(AbridgedCosmicRecord::getVariantName));
+	// With -DvariantAnnotation.affectedVariantsFile=<affected-variants.txt of an ingest>, only the records of the
+	// variants the ingest added, changed or removed are merged, and so only their abridged cosmic records are read
+	private static <T> List<T> getAffectedRecords(List<T> records, Function<T, String> getVariantName)
+		throws IOException {
+
+		String affectedVariantsFile = System.getProperty(affectedVariantsFileProperty);
+		if (affectedVariantsFile == null) {
+			return records;
+		}
+
+		Set<String> affectedVariantNames = new HashSet<>(Files.readAllLines(Paths.get(affectedVariantsFile)));
+		return records.stream()
+			.filter(record -> affectedVariantNames.contains(getVariantName.apply(record)))
+			.collect(Collectors.toList());
+	}
+
+	// Only variant names in the curated files are ever looked up, so abridged cosmic lines for any other variant name
+	// can be skipped before they are parsed
+	static Predicate<String> getCuratedVariantNameFilter(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords
+	) {
+		if (!Boolean.parseBoolean(System.getProperty(prefilterCosmicRecordsProperty, "true"))) {
+			return variantName -> true;
+		}
 
-		printOutputHeaders();
-		printOutputLines(diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords);
+		Set<String> curatedVariantNames = new HashSet<>();
+		for (DiseaseGeneRecord diseaseGeneRecord : diseaseGeneRecords) {
+			curatedVariantNames.add(diseaseGeneRecord.getVariantName());
+		}
+		for (HighPriorityVariantRecord highPriorityVariantRecord : allHighPriorityVariantRecords) {
+			curatedVariantNames.add(highPriorityVariantRecord.getVariantName());
+		}
+
+		return curatedVariantNames::contains;
 	}
 
-	private static void printOutputHeaders() {
+	static Map<String, List<AbridgedCosmicRecord>> getVariantNameToAbridgedCosmicRecords(
+		Predicate<String> variantNameFilter
+	) throws IOException {
+		String cosmicStoreDir = System.getProperty(AbridgedCosmicRecordStore.cosmicStoreDirProperty);
+		if (cosmicStoreDir != null) {
+			return AbridgedCosmicRecordStore.getVariantNameToAbridgedCosmicRecords(
+				Paths.get(cosmicStoreDir), variantNameFilter
+			);
+		} else if (Boolean.getBoolean(offHeapCosmicRecordsProperty)) {
+			return AbridgedCosmicRecordArena.parseAbridgedCosmicRecordArena(
+				getAbridgedCosmicFilePath(), variantNameFilter
+			).asVariantNameToAbridgedCosmicRecords();
+		}
+
+		return AbridgedCosmicRecordIndex.indexAbridgedCosmicRecords(
+			AbridgedCosmicRecord.parseAbridgedCosmicRecords(getAbridgedCosmicFilePath(), variantNameFilter)
+		).asVariantNameToAbridgedCosmicRecords();
+	}
+
+	static String getDiseaseGenesFilePath() {
+		return Paths.get(tsvDir, "DiseaseGenes.tsv").toString();
+	}
+
+	static String getHighPriorityVariantsFilePath() {
+		return Paths.get(tsvDir, "HighPriorityVariants5.tsv").toString();
+	}
+
+	static String getAbridgedCosmicFilePath() {
+		return Paths.get(tsvDir, "Abridged-NoPubMed.tsv").toString();
+	}
+
+	static void printOutputHeaders(String outputFilePath) {
+		printToFile(getOutputHeaderLine(), outputFilePath);
+	}
+
+	static String getOutputHeaderLine() {
 		List<String> outputHeaders = Arrays.asList("Protein", "OMIM_identifier", "UniProt_ID", "Variant_name",
 			"Variant_ID", "Disease", "Mutation_AA", "GOF_LOF_null",
 			"WT_Reactome_Pathway", "Selected_pubmed_PMID", "COSMIC_Pubmed_PMID",
@@ -49,148 +194,161 @@ public class Main {
 			"ReleaseVersion", "Protein_in_Reactome", "Any_Variants_Annotated")
 		;
 
-		printToFile(String.join("\t", outputHeaders).concat(lineSeparator()), outputFile);
+		return String.join("\t", outputHeaders).concat(lineSeparator());
 	}
 
-	private static void printOutputLines(
+	static void printOutputLines(
 		List<DiseaseGeneRecord> diseaseGeneRecords,
 		List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
-		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords,
+		String outputFilePath,
+		String errorFilePath
 	) {
 		Map<String, String> variantNameToOutputLine = new LinkedHashMap<>();
-		variantNameToOutputLine.putAll(
-			getVariantNameToOutputLines(
-				diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords
-			)
-		);
-		variantNameToOutputLine.putAll(
-			getVariantNameToOutputLines(allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords)
+		mergeRecords(
+			diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords,
+			new MergeListener() {
+				@Override
+				public void onOutputLine(int pass, int recordIndex, String variantName, String outputLine) {
+					variantNameToOutputLine.put(variantName, outputLine);
+				}
+
+				@Override
+				public void onErrors(int pass, int recordIndex, List<String> errors) {
+					printToFile(errors, errorFilePath);
+				}
+			}
 		);
 
 		for (String outputLine : variantNameToOutputLine.values()) {
-			printToFile(outputLine, outputFile);
+			printToFile(outputLine, outputFilePath);
 		}
 	}
 
-	private static Map<String, String> getVariantNameToOutputLines(
+	// Output lines put into one insertion-ordered map, later lines replacing earlier ones, give the merged output
+	static void mergeRecords(
 		List<DiseaseGeneRecord> diseaseGeneRecords,
 		List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
-		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords,
+		MergeListener mergeListener
 	) {
-		Map<String, String> variantNameToOutputLine = new LinkedHashMap<>();
+		new MergeJoin(diseaseGeneRecords, allHighPriorityVariantRecords, variantNameToAbridgedCosmicRecords)
+			.merge(mergeListener);
+	}
+
+	// Orders every record of both passes by pass and then by position in its input file
+	static long getRecordOrdinal(int pass, int recordIndex) {
+		return ((long) pass << Integer.SIZE) | recordIndex;
+	}
+
+	static int getRecordPass(long recordOrdinal) {
+		return (int) (recordOrdinal >>> Integer.SIZE);
+	}
+
+	static int getRecordIndex(long recordOrdinal) {
+		return (int) recordOrdinal;
+	}
 
-		Map<String, List<HighPriorityVariantRecord>> variantNameToHighPriorityVariantRecords =
-			allHighPriorityVariantRecords
+	static Map<String, List<HighPriorityVariantRecord>> groupHighPriorityVariantRecords(
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords
+	) {
+		return allHighPriorityVariantRecords
 			.stream()
 			.collect(Collectors.groupingBy(HighPriorityVariantRecord::getVariantName));
+	}
 
-		for (DiseaseGeneRecord diseaseGeneRecord : diseaseGeneRecords) {
-			List<HighPriorityVariantRecord> highPriorityVariantRecords = variantNameToHighPriorityVariantRecords.computeIfAbsent(
-				diseaseGeneRecord.getVariantName(), k -> new ArrayList<>()
-			);
+	// Only reads the maps it is given, so records can be merged from several threads at once
+	static void mergeDiseaseGeneRecord(
+		int recordIndex,
+		DiseaseGeneRecord diseaseGeneRecord,
+		Map<String, List<HighPriorityVariantRecord>> variantNameToHighPriorityVariantRecords,
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords,
+		MergeListener mergeListener
+	) {
+		MergeEvents.SlowVariant slowVariantEvent = MergeEvents.SlowVariant.start();
 
-			List<AbridgedCosmicRecord> abridgedCosmicRecords = variantNameToAbridgedCosmicRecords.computeIfAbsent(
-				diseaseGeneRecord.getVariantName(), k -> new ArrayList<>()
-			);
+		List<HighPriorityVariantRecord> highPriorityVariantRecords = variantNameToHighPriorityVariantRecords.getOrDefault(
+			diseaseGeneRecord.getVariantName(), Collections.emptyList()
+		);
 
-			if (abridgedCosmicRecords.isEmpty()) {
-				CommonAnnotations commonAnnotations = new CommonAnnotations.Builder()
-					.withProtein(diseaseGeneRecord.getProtein())
-					.withVariantName(diseaseGeneRecord.getVariantName())
-					.withStatus(diseaseGeneRecord.getStatus())
-					.withReleaseVersion(diseaseGeneRecord.getReleaseVersion())
-					.isProteinInReactome(getIsProteinInReactome(highPriorityVariantRecords))
-					.build();
-				variantNameToOutputLine.put(
-					diseaseGeneRecord.getVariantName(),
-					createOutputLine(diseaseGeneRecord, commonAnnotations)
+		List<AbridgedCosmicRecord> abridgedCosmicRecords = variantNameToAbridgedCosmicRecords.getOrDefault(
+			diseaseGeneRecord.getVariantName(), Collections.emptyList()
+		);
+
+		try {
+			if (!abridgedCosmicRecords.isEmpty()) {
+				List<String> errors = getErrors(
+					abridgedCosmicRecords,
+					diseaseGeneRecord,
+					checkForAbridgedCosmicRecordDifferencesError(diseaseGeneRecord.getVariantName(), abridgedCosmicRecords),
+					getMismatches(highPriorityVariantRecords, abridgedCosmicRecords.get(0))
 				);
-			} else {
-				List<String> errors = getErrors(abridgedCosmicRecords, diseaseGeneRecord, highPriorityVariantRecords);
 				if (!errors.isEmpty()) {
-					printToFile(errors, errorFile);
-					continue;
+					mergeListener.onErrors(DISEASE_GENE_PASS, recordIndex, errors);
+					return;
 				}
-
-				AbridgedCosmicRecord representativeAbridgedCosmicRecord = abridgedCosmicRecords.get(0);
-				CommonAnnotations commonAnnotations = new CommonAnnotations.Builder()
-					.withProtein(diseaseGeneRecord.getProtein())
-					.withVariantName(diseaseGeneRecord.getVariantName())
-					.withVariantIds(getVariantIds(abridgedCosmicRecords))
-					.withMutationAA(representativeAbridgedCosmicRecord.getMutationAA())
-					.withCosmicPubMedIds(getCosmicPubMedIds(abridgedCosmicRecords))
-					.withStatus(diseaseGeneRecord.getStatus())
-					.withReleaseVersion(diseaseGeneRecord.getReleaseVersion())
-					.isProteinInReactome(representativeAbridgedCosmicRecord.proteinIsInReactome())
-					.areAnyVariantsAnnotated(representativeAbridgedCosmicRecord.anyVariantsAreAnnotated())
-					.build();
-
-				variantNameToOutputLine.put(
-					diseaseGeneRecord.getVariantName(),
-					createOutputLine(diseaseGeneRecord, commonAnnotations)
-				);
-
 			}
-		}
 
-		return variantNameToOutputLine;
+			mergeListener.onOutputLine(
+				DISEASE_GENE_PASS,
+				recordIndex,
+				diseaseGeneRecord.getVariantName(),
+				createDiseaseGeneOutputLine(diseaseGeneRecord, highPriorityVariantRecords, abridgedCosmicRecords)
+			);
+		} finally {
+			slowVariantEvent.commitIfSlow(
+				DISEASE_GENE_PASS, diseaseGeneRecord.getVariantName(), abridgedCosmicRecords.size()
+			);
+		}
 	}
 
-	private static Map<String, String> getVariantNameToOutputLines(
-		List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
-		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords
+	static void mergeHighPriorityVariantRecord(
+		int recordIndex,
+		HighPriorityVariantRecord highPriorityVariantRecord,
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords,
+		MergeListener mergeListener
 	) {
-		Map<String, String> variantNameToOutputLine = new LinkedHashMap<>();
+		MergeEvents.SlowVariant slowVariantEvent = MergeEvents.SlowVariant.start();
 
-		for (HighPriorityVariantRecord highPriorityVariantRecord : allHighPriorityVariantRecords) {
-			List<AbridgedCosmicRecord> abridgedCosmicRecords = variantNameToAbridgedCosmicRecords.computeIfAbsent(
-				highPriorityVariantRecord.getVariantName(), k -> new ArrayList<>()
-			);
+		List<AbridgedCosmicRecord> abridgedCosmicRecords = variantNameToAbridgedCosmicRecords.getOrDefault(
+			highPriorityVariantRecord.getVariantName(), Collections.emptyList()
+		);
 
-			List<String> errors = getErrors(abridgedCosmicRecords, highPriorityVariantRecord);
+		try {
+			List<String> errors = getErrors(
+				abridgedCosmicRecords,
+				highPriorityVariantRecord,
+				checkForAbridgedCosmicRecordDifferencesError(highPriorityVariantRecord.getVariantName(), abridgedCosmicRecords)
+			);
 			if (!errors.isEmpty()) {
-				printToFile(errors, errorFile);
-				continue;
+				mergeListener.onErrors(HIGH_PRIORITY_VARIANT_PASS, recordIndex, errors);
+				return;
 			}
 
-			AbridgedCosmicRecord representativeAbridgedCosmicRecord = abridgedCosmicRecords.get(0);
-			CommonAnnotations commonAnnotations = new CommonAnnotations.Builder()
-				.withProtein(representativeAbridgedCosmicRecord.getProtein())
-				.withVariantName(representativeAbridgedCosmicRecord.getVariantName())
-				.withVariantIds(getVariantIds(abridgedCosmicRecords))
-				.withMutationAA(representativeAbridgedCosmicRecord.getMutationAA())
-				.withCosmicPubMedIds(getCosmicPubMedIds(abridgedCosmicRecords))
-				.withStatus(representativeAbridgedCosmicRecord.getStatus())
-				.withReleaseVersion(representativeAbridgedCosmicRecord.getReleaseVersion())
-				.isProteinInReactome(representativeAbridgedCosmicRecord.proteinIsInReactome())
-				.areAnyVariantsAnnotated(representativeAbridgedCosmicRecord.anyVariantsAreAnnotated())
-				.build();
-
-			variantNameToOutputLine.put(
+			mergeListener.onOutputLine(
+				HIGH_PRIORITY_VARIANT_PASS,
+				recordIndex,
 				highPriorityVariantRecord.getVariantName(),
-				createOutputLine(commonAnnotations)
+				createHighPriorityVariantOutputLine(abridgedCosmicRecords)
+			);
+		} finally {
+			slowVariantEvent.commitIfSlow(
+				HIGH_PRIORITY_VARIANT_PASS, highPriorityVariantRecord.getVariantName(), abridgedCosmicRecords.size()
 			);
 		}
-
-		return variantNameToOutputLine;
 	}
 
-	private static List<String> getErrors(
+	static List<String> getErrors(
 		List<AbridgedCosmicRecord> abridgedCosmicRecords,
-		HighPriorityVariantRecord highPriorityVariantRecord
+		HighPriorityVariantRecord highPriorityVariantRecord,
+		String abridgedCosmicRecordDifferencesError
 	) {
 		List<String> errors = new ArrayList<>();
 
 		if (abridgedCosmicRecords.isEmpty()) {
-			String error = highPriorityVariantRecord.getVariantName() + " does not have any corresponding " +
-				"abridged cosmic record(s)" + lineSeparator();
-
-			errors.add(error);
+			errors.add(getNoAbridgedCosmicRecordsError(highPriorityVariantRecord.getVariantName()));
 		}
 
-		String abridgedCosmicRecordDifferencesError =
-			checkForAbridgedCosmicRecordDifferencesError(highPriorityVariantRecord.getVariantName(), abridgedCosmicRecords);
-
 		if (!abridgedCosmicRecordDifferencesError.isEmpty()) {
 			errors.add(abridgedCosmicRecordDifferencesError);
 		}
@@ -204,32 +362,32 @@ public class Main {
 		return errors;
 	}
 
-	private static List<String> getErrors(
+	// The high priority variant mismatches depend only on the variant, so they can be found once for all of its
+	// disease gene records
+	static List<String> getErrors(
 		List<AbridgedCosmicRecord> abridgedCosmicRecords,
 		DiseaseGeneRecord diseaseGeneRecord,
-		List<HighPriorityVariantRecord> highPriorityVariantRecords
+		String abridgedCosmicRecordDifferencesError,
+		List<String> highPriorityVariantMismatches
 	) {
 		List<String> errors = new ArrayList<>();
 
-		String abridgedCosmicRecordDifferencesError =
-			checkForAbridgedCosmicRecordDifferencesError(diseaseGeneRecord.getVariantName(), abridgedCosmicRecords);
-
 		if (!abridgedCosmicRecordDifferencesError.isEmpty()) {
 			errors.add(abridgedCosmicRecordDifferencesError);
 		}
 
 		AbridgedCosmicRecord representativeAbridgedCosmicRecord = abridgedCosmicRecords.get(0);
-		List<String> mismatches = getMismatches(
-			representativeAbridgedCosmicRecord, diseaseGeneRecord, highPriorityVariantRecords
-		);
-		if (!mismatches.isEmpty()) {
-			errors.addAll(mismatches);
-		}
+		errors.addAll(getMismatches(diseaseGeneRecord, representativeAbridgedCosmicRecord));
+		errors.addAll(highPriorityVariantMismatches);
 
 		return errors;
 	}
 
-	private static String checkForAbridgedCosmicRecordDifferencesError(
+	static String getNoAbridgedCosmicRecordsError(String variantName) {
+		return variantName + " does not have any corresponding abridged cosmic record(s)" + lineSeparator();
+	}
+
+	static String checkForAbridgedCosmicRecordDifferencesError(
 		String variantName,
 		List<AbridgedCosmicRecord> abridgedCosmicRecords
 	) {
@@ -241,6 +399,56 @@ public class Main {
 		}
 	}
 
+	static String createDiseaseGeneOutputLine(
+		DiseaseGeneRecord diseaseGeneRecord,
+		List<HighPriorityVariantRecord> highPriorityVariantRecords,
+		List<AbridgedCosmicRecord> abridgedCosmicRecords
+	) {
+		if (abridgedCosmicRecords.isEmpty()) {
+			CommonAnnotations commonAnnotations = new CommonAnnotations.Builder()
+				.withProtein(diseaseGeneRecord.getProtein())
+				.withVariantName(diseaseGeneRecord.getVariantName())
+				.withStatus(diseaseGeneRecord.getStatus())
+				.withReleaseVersion(diseaseGeneRecord.getReleaseVersion())
+				.isProteinInReactome(getIsProteinInReactome(highPriorityVariantRecords))
+				.build();
+
+			return createOutputLine(diseaseGeneRecord, commonAnnotations);
+		}
+
+		AbridgedCosmicRecord representativeAbridgedCosmicRecord = abridgedCosmicRecords.get(0);
+		CommonAnnotations commonAnnotations = new CommonAnnotations.Builder()
+			.withProtein(diseaseGeneRecord.getProtein())
+			.withVariantName(diseaseGeneRecord.getVariantName())
+			.withVariantIds(getVariantIds(abridgedCosmicRecords))
+			.withMutationAA(representativeAbridgedCosmicRecord.getMutationAA())
+			.withCosmicPubMedIds(getCosmicPubMedIds(abridgedCosmicRecords))
+			.withStatus(diseaseGeneRecord.getStatus())
+			.withReleaseVersion(diseaseGeneRecord.getReleaseVersion())
+			.isProteinInReactome(representativeAbridgedCosmicRecord.proteinIsInReactome())
+			.areAnyVariantsAnnotated(representativeAbridgedCosmicRecord.anyVariantsAreAnnotated())
+			.build();
+
+		return createOutputLine(diseaseGeneRecord, commonAnnotations);
+	}
+
+	static String createHighPriorityVariantOutputLine(List<AbridgedCosmicRecord> abridgedCosmicRecords) {
+		AbridgedCosmicRecord representativeAbridgedCosmicRecord = abridgedCosmicRecords.get(0);
+		CommonAnnotations commonAnnotations = new CommonAnnotations.Builder()
+			.withProtein(representativeAbridgedCosmicRecord.getProtein())
+			.withVariantName(representativeAbridgedCosmicRecord.getVariantName())
+			.withVariantIds(getVariantIds(abridgedCosmicRecords))
+			.withMutationAA(representativeAbridgedCosmicRecord.getMutationAA())
+			.withCosmicPubMedIds(getCosmicPubMedIds(abridgedCosmicRecords))
+			.withStatus(representativeAbridgedCosmicRecord.getStatus())
+			.withReleaseVersion(representativeAbridgedCosmicRecord.getReleaseVersion())
+			.isProteinInReactome(representativeAbridgedCosmicRecord.proteinIsInReactome())
+			.areAnyVariantsAnnotated(representativeAbridgedCosmicRecord.anyVariantsAreAnnotated())
+			.build();
+
+		return createOutputLine(commonAnnotations);
+	}
+
 	private static String createOutputLine(DiseaseGeneRecord diseaseGeneRecord, CommonAnnotations commonAnnotations) {
 		return String.join(
 			"\t",
@@ -270,19 +478,6 @@ public class Main {
 		return createOutputLine(null, commonAnnotations);
 	}
 
-	private static List<String> getMismatches(
-		AbridgedCosmicRecord abridgedCosmicRecord,
-		DiseaseGeneRecord diseaseGeneRecord,
-		List<HighPriorityVariantRecord> highPriorityVariantRecords
-	) {
-		List<String> mismatches = new ArrayList<>();
-
-		mismatches.addAll(getMismatches(diseaseGeneRecord, abridgedCosmicRecord));
-		mismatches.addAll(getMismatches(highPriorityVariantRecords, abridgedCosmicRecord));
-
-		return mismatches;
-	}
-
 	private static List<String> getMismatches(DiseaseGeneRecord diseaseGeneRecord,
 										AbridgedCosmicRecord abridgedCosmicRecord) {
 		List<String> mismatches = new ArrayList<>();
@@ -309,7 +504,7 @@ public class Main {
 		return mismatches;
 	}
 
-	private static List<String> getMismatches(
+	static List<String> getMismatches(
 		List<HighPriorityVariantRecord> highPriorityVariantRecords,
 		AbridgedCosmicRecord abridgedCosmicRecord
 	) {
@@ -359,4 +554,15 @@ public class Main {
 			throw new RuntimeException(e);
 		}
 	}
+
+	// Encodes like printToFile, so characters the default charset cannot encode are replaced rather than failing the write
+	static BufferedWriter newOutputWriter(Path filePath) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(filePath), Charset.defaultCharset()));
+	}
+
+	interface MergeListener {
+		void onOutputLine(int pass, int recordIndex, String variantName, String outputLine);
+
+		void onErrors(int pass, int recordIndex, List<String> errors);
+	}
 }
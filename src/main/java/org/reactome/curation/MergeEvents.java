@@ -0,0 +1,218 @@
+package org.reactome.curation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for tracing the merge in production recordings.  They cost next to nothing unless a
+ * recording has them enabled.  Slow variant events are only committed for variants whose merge takes longer than
+ * -DvariantAnnotation.slowVariantThresholdMillis or which have at least
+ * -DvariantAnnotation.slowVariantCosmicRecords abridged cosmic records.  The project targets Java 8, which has no
+ * jdk.jfr, so the event types are defined reflectively through jdk.jfr.EventFactory and the events do nothing on a
+ * runtime without it.
+ */
+public class MergeEvents {
+	static final String slowVariantThresholdMillisProperty = "variantAnnotation.slowVariantThresholdMillis";
+	static final String slowVariantCosmicRecordsProperty = "variantAnnotation.slowVariantCosmicRecords";
+
+	private static final long slowVariantThresholdNanos =
+		Long.getLong(slowVariantThresholdMillisProperty, 50) * 1_000_000;
+	private static final int slowVariantCosmicRecords = Integer.getInteger(slowVariantCosmicRecordsProperty, 10_000);
+
+	private static final EventType inputFileParsedType = EventType.define(
+		"org.reactome.curation.InputFileParsed",
+		"Input File Parsed",
+		"Reading and parsing one input file",
+		new EventField(String.class, "filePath", "File"),
+		new EventField(int.class, "recordCount", "Records")
+	);
+	private static final EventType mergePassType = EventType.define(
+		"org.reactome.curation.MergePass",
+		"Merge Pass",
+		"Merging all disease gene or all high priority variant records with their abridged cosmic records",
+		new EventField(String.class, "pass", "Pass"),
+		new EventField(int.class, "recordCount", "Records")
+	);
+	private static final EventType slowVariantType = EventType.define(
+		"org.reactome.curation.SlowVariant",
+		"Slow Variant",
+		"Checking and formatting one variant took long or had many abridged cosmic records",
+		new EventField(String.class, "pass", "Pass"),
+		new EventField(String.class, "variantName", "Variant Name"),
+		new EventField(int.class, "cosmicRecordCount", "Abridged Cosmic Records")
+	);
+
+	public static class InputFileParsed {
+		private Object event = inputFileParsedType.newEvent();
+
+		void begin() {
+			inputFileParsedType.begin(this.event);
+		}
+
+		void commit(String filePath, int recordCount) {
+			inputFileParsedType.endAndCommit(this.event, filePath, recordCount);
+		}
+	}
+
+	public static class MergePass {
+		private Object event = mergePassType.newEvent();
+
+		void begin() {
+			mergePassType.begin(this.event);
+		}
+
+		void commit(int pass, int recordCount) {
+			mergePassType.endAndCommit(this.event, getPassName(pass), recordCount);
+		}
+
+		// Both passes are merged together when they are joined over their variant names
+		void commitJoined(int recordCount) {
+			mergePassType.endAndCommit(this.event, "disease gene and high priority variant", recordCount);
+		}
+	}
+
+	public static class SlowVariant {
+		private Object event;
+		private long startNanoTime;
+
+		static SlowVariant start() {
+			SlowVariant slowVariant = new SlowVariant();
+			slowVariant.event = slowVariantType.newEvent();
+			slowVariant.startNanoTime = System.nanoTime();
+			slowVariantType.begin(slowVariant.event);
+			return slowVariant;
+		}
+
+		void commitIfSlow(int pass, String variantName, int cosmicRecordCount) {
+			if (!slowVariantType.endAndShouldCommit(this.event)) {
+				return;
+			}
+
+			if (System.nanoTime() - this.startNanoTime >= slowVariantThresholdNanos ||
+				cosmicRecordCount >= slowVariantCosmicRecords) {
+				slowVariantType.commit(this.event, getPassName(pass), variantName, cosmicRecordCount);
+			}
+		}
+	}
+
+	private static String getPassName(int pass) {
+		return pass == Main.DISEASE_GENE_PASS ? "disease gene" : "high priority variant";
+	}
+
+	private static class EventField {
+		private Class<?> type;
+		private String name;
+		private String label;
+
+		private EventField(Class<?> type, String name, String label) {
+			this.type = type;
+			this.name = name;
+			this.label = label;
+		}
+	}
+
+	/**
+	 * One event type made with jdk.jfr.EventFactory, or a type whose events are all null when jdk.jfr cannot be
+	 * loaded.  No event is created while the type is not enabled in any recording.
+	 */
+	private static class EventType {
+		private Object eventFactory;
+		private Object jfrEventType;
+		private Method newEvent;
+		private Method isEnabled;
+		private Method begin;
+		private Method end;
+		private Method shouldCommit;
+		private Method set;
+		private Method commit;
+
+		private static EventType define(String name, String label, String description, EventField... fields) {
+			EventType eventType = new EventType();
+			try {
+				Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+				Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+				Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+				Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+				Class<?> eventClass = Class.forName("jdk.jfr.Event");
+
+				List<Object> eventAnnotations = new ArrayList<>();
+				eventAnnotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Name"), name));
+				eventAnnotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Label"), label));
+				eventAnnotations.add(annotationElement.newInstance(
+					Class.forName("jdk.jfr.Category"), new String[] {"Reactome", "Variant Annotation"}
+				));
+				eventAnnotations.add(annotationElement.newInstance(Class.forName("jdk.jfr.Description"), description));
+
+				List<Object> valueDescriptors = new ArrayList<>();
+				for (EventField field : fields) {
+					valueDescriptors.add(valueDescriptorClass.getConstructor(Class.class, String.class, List.class)
+						.newInstance(field.type, field.name, Collections.singletonList(
+							annotationElement.newInstance(Class.forName("jdk.jfr.Label"), field.label)
+						)));
+				}
+
+				eventType.eventFactory = eventFactoryClass.getMethod("create", List.class, List.class)
+					.invoke(null, eventAnnotations, valueDescriptors);
+				eventType.jfrEventType = eventFactoryClass.getMethod("getEventType").invoke(eventType.eventFactory);
+				eventType.newEvent = eventFactoryClass.getMethod("newEvent");
+				eventType.isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+				eventType.begin = eventClass.getMethod("begin");
+				eventType.end = eventClass.getMethod("end");
+				eventType.shouldCommit = eventClass.getMethod("shouldCommit");
+				eventType.set = eventClass.getMethod("set", int.class, Object.class);
+				eventType.commit = eventClass.getMethod("commit");
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				eventType.eventFactory = null;
+			}
+			return eventType;
+		}
+
+		private Object newEvent() {
+			if (this.eventFactory == null || !(Boolean) invoke(this.isEnabled, this.jfrEventType)) {
+				return null;
+			}
+			return invoke(this.newEvent, this.eventFactory);
+		}
+
+		private void begin(Object event) {
+			if (event != null) {
+				invoke(this.begin, event);
+			}
+		}
+
+		private boolean endAndShouldCommit(Object event) {
+			if (event == null) {
+				return false;
+			}
+
+			invoke(this.end, event);
+			return (Boolean) invoke(this.shouldCommit, event);
+		}
+
+		private void endAndCommit(Object event, Object... values) {
+			if (endAndShouldCommit(event)) {
+				commit(event, values);
+			}
+		}
+
+		// The values are in the order of the fields the type was defined with
+		private void commit(Object event, Object... values) {
+			for (int field = 0; field < values.length; field++) {
+				invoke(this.set, event, field, values[field]);
+			}
+			invoke(this.commit, event);
+		}
+
+		private static Object invoke(Method method, Object target, Object... arguments) {
+			try {
+				return method.invoke(target, arguments);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new IllegalStateException("Could not call " + method + " for a Flight Recorder event", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package org.reactome.curation;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.reactome.curation.Main.DISEASE_GENE_PASS;
+import static org.reactome.curation.Main.HIGH_PRIORITY_VARIANT_PASS;
+
+/**
+ * Merges the disease gene and high priority variant records in one pass over the union of their variant names.  Each
+ * variant's abridged cosmic records are checked for differences once, and only the output line that ends up in the
+ * merged output is created: the high priority variant line when any of its records are free of errors, otherwise the
+ * line of its last disease gene record free of errors.  The listener is given the errors and output lines at the
+ * same ordinals as merging the disease gene records and then the high priority variant records would give them, in
+ * ordinal order, and each as soon as no variant still to be joined can have an earlier one.
+ */
+public class MergeJoin {
+	private List<DiseaseGeneRecord> diseaseGeneRecords;
+	private List<HighPriorityVariantRecord> allHighPriorityVariantRecords;
+	private Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords;
+
+	private long resumeAfterOrdinal = -1;
+	private Set<String> writtenVariantNames = Collections.emptySet();
+
+	private SortedMap<Long, List<String>> ordinalToErrors = new TreeMap<>();
+	private SortedMap<Long, String> ordinalToVariantName = new TreeMap<>();
+	private Map<String, String> variantNameToOutputLine = new HashMap<>();
+
+	MergeJoin(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords
+	) {
+		this.diseaseGeneRecords = diseaseGeneRecords;
+		this.allHighPriorityVariantRecords = allHighPriorityVariantRecords;
+		this.variantNameToAbridgedCosmicRecords = variantNameToAbridgedCosmicRecords;
+	}
+
+	// Leaves out the errors of every record up to and including the ordinal, the variants with no records after it and
+	// the output lines of the variant names already written
+	MergeJoin resumeAfter(long resumeAfterOrdinal, Set<String> writtenVariantNames) {
+		this.resumeAfterOrdinal = resumeAfterOrdinal;
+		this.writtenVariantNames = writtenVariantNames;
+		return this;
+	}
+
+	void merge(Main.MergeListener mergeListener) {
+		MergeEvents.MergePass mergePassEvent = new MergeEvents.MergePass();
+		mergePassEvent.begin();
+
+		Map<String, List<Integer>> variantNameToDiseaseGeneRecordIndices =
+			getVariantNameToRecordIndices(this.diseaseGeneRecords, DiseaseGeneRecord::getVariantName);
+		Map<String, List<Integer>> variantNameToHighPriorityVariantRecordIndices = getVariantNameToRecordIndices(
+			this.allHighPriorityVariantRecords, HighPriorityVariantRecord::getVariantName
+		);
+
+		Set<String> variantNameSet = new LinkedHashSet<>(variantNameToDiseaseGeneRecordIndices.keySet());
+		variantNameSet.addAll(variantNameToHighPriorityVariantRecordIndices.keySet());
+		List<String> variantNames = new ArrayList<>(variantNameSet);
+
+		// The variants are joined in the order of their first records, so once one is joined no later variant has a
+		// record before the first record of the next, and everything before it is given to the listener
+		for (int variantIndex = 0; variantIndex < variantNames.size(); variantIndex++) {
+			String variantName = variantNames.get(variantIndex);
+			List<Integer> diseaseGeneRecordIndices =
+				variantNameToDiseaseGeneRecordIndices.getOrDefault(variantName, Collections.emptyList());
+			List<Integer> highPriorityVariantRecordIndices =
+				variantNameToHighPriorityVariantRecordIndices.getOrDefault(variantName, Collections.emptyList());
+
+			if (getLastOrdinal(diseaseGeneRecordIndices, highPriorityVariantRecordIndices) > this.resumeAfterOrdinal) {
+				joinVariant(variantName, diseaseGeneRecordIndices, highPriorityVariantRecordIndices);
+			}
+
+			long nextVariantFirstOrdinal = Long.MAX_VALUE;
+			if (variantIndex + 1 < variantNames.size()) {
+				String nextVariantName = variantNames.get(variantIndex + 1);
+				nextVariantFirstOrdinal = getFirstOrdinal(
+					variantNameToDiseaseGeneRecordIndices.getOrDefault(nextVariantName, Collections.emptyList()),
+					variantNameToHighPriorityVariantRecordIndices.getOrDefault(nextVariantName, Collections.emptyList())
+				);
+			}
+			emitBefore(nextVariantFirstOrdinal, mergeListener);
+		}
+
+		mergePassEvent.commitJoined(this.diseaseGeneRecords.size() + this.allHighPriorityVariantRecords.size());
+	}
+
+	// Each variant's line goes at the ordinal of its first record free of errors, which is where the line of the
+	// separate passes would first have been put.  A record has either errors or a line, so no ordinal has both.
+	private void emitBefore(long ordinal, Main.MergeListener mergeListener) {
+		while (true) {
+			long errorOrdinal = this.ordinalToErrors.isEmpty() ? Long.MAX_VALUE : this.ordinalToErrors.firstKey();
+			long outputLineOrdinal =
+				this.ordinalToVariantName.isEmpty() ? Long.MAX_VALUE : this.ordinalToVariantName.firstKey();
+
+			if (errorOrdinal < outputLineOrdinal && errorOrdinal < ordinal) {
+				mergeListener.onErrors(
+					Main.getRecordPass(errorOrdinal),
+					Main.getRecordIndex(errorOrdinal),
+					this.ordinalToErrors.remove(errorOrdinal)
+				);
+			} else if (outputLineOrdinal < errorOrdinal && outputLineOrdinal < ordinal) {
+				String variantName = this.ordinalToVariantName.remove(outputLineOrdinal);
+				mergeListener.onOutputLine(
+					Main.getRecordPass(outputLineOrdinal),
+					Main.getRecordIndex(outputLineOrdinal),
+					variantName,
+					this.variantNameToOutputLine.remove(variantName)
+				);
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void joinVariant(
+		String variantName,
+		List<Integer> diseaseGeneRecordIndices,
+		List<Integer> highPriorityVariantRecordIndices
+	) {
+		MergeEvents.SlowVariant slowVariantEvent = MergeEvents.SlowVariant.start();
+
+		List<AbridgedCosmicRecord> abridgedCosmicRecords = this.variantNameToAbridgedCosmicRecords.getOrDefault(
+			variantName, Collections.emptyList()
+		);
+
+		List<HighPriorityVariantRecord> highPriorityVariantRecords = new ArrayList<>();
+		for (int recordIndex : highPriorityVariantRecordIndices) {
+			highPriorityVariantRecords.add(this.allHighPriorityVariantRecords.get(recordIndex));
+		}
+
+		String abridgedCosmicRecordDifferencesError =
+			Main.checkForAbridgedCosmicRecordDifferencesError(variantName, abridgedCosmicRecords);
+		List<String> highPriorityVariantMismatches = abridgedCosmicRecords.isEmpty() ?
+			Collections.emptyList() :
+			Main.getMismatches(highPriorityVariantRecords, abridgedCosmicRecords.get(0));
+
+		DiseaseGeneRecord lastDiseaseGeneRecordWithoutErrors = null;
+		boolean anyHighPriorityVariantRecordWithoutErrors = false;
+		try {
+			for (int recordIndex : diseaseGeneRecordIndices) {
+				DiseaseGeneRecord diseaseGeneRecord = this.diseaseGeneRecords.get(recordIndex);
+				long ordinal = Main.getRecordOrdinal(DISEASE_GENE_PASS, recordIndex);
+
+				if (!abridgedCosmicRecords.isEmpty()) {
+					List<String> errors = Main.getErrors(
+						abridgedCosmicRecords,
+						diseaseGeneRecord,
+						abridgedCosmicRecordDifferencesError,
+						highPriorityVariantMismatches
+					);
+					if (!errors.isEmpty()) {
+						putErrors(ordinal, errors);
+						continue;
+					}
+				}
+
+				if (lastDiseaseGeneRecordWithoutErrors == null) {
+					putVariantName(ordinal, variantName);
+				}
+				lastDiseaseGeneRecordWithoutErrors = diseaseGeneRecord;
+			}
+
+			for (int recordIndex : highPriorityVariantRecordIndices) {
+				long ordinal = Main.getRecordOrdinal(HIGH_PRIORITY_VARIANT_PASS, recordIndex);
+
+				List<String> errors = Main.getErrors(
+					abridgedCosmicRecords,
+					this.allHighPriorityVariantRecords.get(recordIndex),
+					abridgedCosmicRecordDifferencesError
+				);
+				if (!errors.isEmpty()) {
+					putErrors(ordinal, errors);
+					continue;
+				}
+
+				if (lastDiseaseGeneRecordWithoutErrors == null && !anyHighPriorityVariantRecordWithoutErrors) {
+					putVariantName(ordinal, variantName);
+				}
+				anyHighPriorityVariantRecordWithoutErrors = true;
+			}
+
+			// Every high priority variant line for a variant is the same, as it comes from the abridged cosmic records
+			if (this.writtenVariantNames.contains(variantName)) {
+				return;
+			} else if (anyHighPriorityVariantRecordWithoutErrors) {
+				this.variantNameToOutputLine.put(
+					variantName, Main.createHighPriorityVariantOutputLine(abridgedCosmicRecords)
+				);
+			} else if (lastDiseaseGeneRecordWithoutErrors != null) {
+				this.variantNameToOutputLine.put(
+					variantName,
+					Main.createDiseaseGeneOutputLine(
+						lastDiseaseGeneRecordWithoutErrors, highPriorityVariantRecords, abridgedCosmicRecords
+					)
+				);
+			}
+		} finally {
+			slowVariantEvent.commitIfSlow(
+				anyHighPriorityVariantRecordWithoutErrors ? HIGH_PRIORITY_VARIANT_PASS : DISEASE_GENE_PASS,
+				variantName,
+				abridgedCosmicRecords.size()
+			);
+		}
+	}
+
+	private void putErrors(long ordinal, List<String> errors) {
+		if (ordinal > this.resumeAfterOrdinal) {
+			this.ordinalToErrors.put(ordinal, errors);
+		}
+	}
+
+	private void putVariantName(long ordinal, String variantName) {
+		if (!this.writtenVariantNames.contains(variantName)) {
+			this.ordinalToVariantName.put(ordinal, variantName);
+		}
+	}
+
+	// The record indices are in ascending order, and every high priority variant ordinal is after every disease gene one
+	private static long getFirstOrdinal(
+		List<Integer> diseaseGeneRecordIndices,
+		List<Integer> highPriorityVariantRecordIndices
+	) {
+		if (!diseaseGeneRecordIndices.isEmpty()) {
+			return Main.getRecordOrdinal(DISEASE_GENE_PASS, diseaseGeneRecordIndices.get(0));
+		}
+		return Main.getRecordOrdinal(HIGH_PRIORITY_VARIANT_PASS, highPriorityVariantRecordIndices.get(0));
+	}
+
+	private static long getLastOrdinal(
+		List<Integer> diseaseGeneRecordIndices,
+		List<Integer> highPriorityVariantRecordIndices
+	) {
+		if (!highPriorityVariantRecordIndices.isEmpty()) {
+			int lastRecordIndex = highPriorityVariantRecordIndices.get(highPriorityVariantRecordIndices.size() - 1);
+			return Main.getRecordOrdinal(HIGH_PRIORITY_VARIANT_PASS, lastRecordIndex);
+		}
+
+		int lastRecordIndex = diseaseGeneRecordIndices.get(diseaseGeneRecordIndices.size() - 1);
+		return Main.getRecordOrdinal(DISEASE_GENE_PASS, lastRecordIndex);
+	}
+
+	static <E> Map<String, List<Integer>> getVariantNameToRecordIndices(
+		List<E> records, Function<E, String> variantNameGetter
+	) {
+		Map<String, List<Integer>> variantNameToRecordIndices = new LinkedHashMap<>();
+		for (int recordIndex = 0; recordIndex < records.size(); recordIndex++) {
+			variantNameToRecordIndices
+				.computeIfAbsent(variantNameGetter.apply(records.get(recordIndex)), variantName -> new ArrayList<>())
+				.add(recordIndex);
+		}
+		return variantNameToRecordIndices;
+	}
+}
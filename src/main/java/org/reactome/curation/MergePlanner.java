@@ -0,0 +1,213 @@
+package org.reactome.curation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.reactome.curation.GenericRecord.getField;
+
+/**
+ * Plans how the default run merges from the size of the abridged cosmic records it reads, the share of them that the
+ * curated files need, the heap left once the curated files are parsed and the number of cores.  The records read are
+ * sized from a sample of the abridged cosmic file's lines, or from the index when they are read from a store.  Only
+ * an in-memory merge writes the checkpoint a crashed merge is resumed from, so the default run always merges in
+ * memory, as a checkpointed merge join, and the plan only logs when another strategy would suit the merge better: a
+ * pipelined merge that merges in parallel, for a large abridged cosmic file on several cores, or, when the merge is
+ * not expected to fit in half of the free heap, a spilled merge.  Each shard of the variant names of a spilled merge
+ * is merged in turn into a temporary directory, so only its abridged cosmic records are held at once, and the shards
+ * are then reassembled.  Either is chosen with -DvariantAnnotation.mergeStrategy=pipelined|spilled, and the shard
+ * count with -DvariantAnnotation.spilledShardCount.
+ */
+public class MergePlanner {
+	static final String mergeStrategyProperty = "variantAnnotation.mergeStrategy";
+	static final String spilledShardCountProperty = "variantAnnotation.spilledShardCount";
+	// About what a parsed and indexed abridged cosmic record retains, as HeapFootprintTest measures it
+	static final long abridgedCosmicRecordIndexBytesPerRecord = 736;
+
+	private static final int sampleLineCount = 10_000;
+	private static final long pipelinedMinimumAbridgedCosmicBytes = 256L * 1024 * 1024;
+	private static final int pipelinedMinimumCores = 4;
+	private static final double freeHeapShare = 0.5;
+
+	private Strategy strategy;
+	private int shardCount;
+	private String reason;
+
+	private MergePlanner(Strategy strategy, int shardCount, String reason) {
+		this.strategy = strategy;
+		this.shardCount = shardCount;
+		this.reason = reason;
+	}
+
+	static MergePlanner plan(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords
+	) throws IOException {
+		Predicate<String> curatedVariantNameFilter =
+			Main.getCuratedVariantNameFilter(diseaseGeneRecords, allHighPriorityVariantRecords);
+		String cosmicStoreDir = System.getProperty(AbridgedCosmicRecordStore.cosmicStoreDirProperty);
+
+		long abridgedCosmicBytes;
+		long estimatedRetainedBytes;
+		String abridgedCosmicInput;
+		if (cosmicStoreDir != null) {
+			// Merges read only the curated variants' groups from the store, which its index gives the size of
+			AbridgedCosmicRecordStore store = AbridgedCosmicRecordStore.open(Paths.get(cosmicStoreDir));
+			abridgedCosmicBytes = store.getIndexedBytes(curatedVariantNameFilter);
+			estimatedRetainedBytes =
+				store.getIndexedLineCount(curatedVariantNameFilter) * abridgedCosmicRecordIndexBytesPerRecord;
+			abridgedCosmicInput = "abridged cosmic store with " + abridgedCosmicBytes + " bytes of curated groups";
+		} else {
+			abridgedCosmicBytes = Files.size(Paths.get(Main.getAbridgedCosmicFilePath()));
+			estimatedRetainedBytes = estimateRetainedAbridgedCosmicBytes(abridgedCosmicBytes, curatedVariantNameFilter);
+			abridgedCosmicInput = "abridged cosmic file of " + abridgedCosmicBytes + " bytes";
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		long usableHeapBytes =
+			(long) ((runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) * freeHeapShare);
+		int cores = runtime.availableProcessors();
+
+		String inputs = abridgedCosmicInput + ", an estimated " +
+			estimatedRetainedBytes + " bytes of it retained, " + usableHeapBytes + " bytes of heap to use and " + cores +
+			" core(s)";
+		int estimatedShardCount = Integer.getInteger(
+			spilledShardCountProperty, (int) Math.max(2, ceilDiv(estimatedRetainedBytes, Math.max(usableHeapBytes, 1)))
+		);
+
+		String mergeStrategy = System.getProperty(mergeStrategyProperty, "auto");
+		if (!mergeStrategy.equals("auto")) {
+			return new MergePlanner(
+				Strategy.fromPropertyValue(mergeStrategy),
+				estimatedShardCount,
+				"set by " + mergeStrategyProperty + ", with an " + inputs
+			);
+		}
+
+		if (estimatedRetainedBytes > usableHeapBytes) {
+			return new MergePlanner(
+				Strategy.IN_MEMORY,
+				0,
+				"too large for the heap, so " + mergeStrategyProperty + "=spilled may be needed, with an " + inputs
+			);
+		} else if (abridgedCosmicBytes >= pipelinedMinimumAbridgedCosmicBytes && cores >= pipelinedMinimumCores) {
+			return new MergePlanner(
+				Strategy.IN_MEMORY,
+				0,
+				"large enough to merge in parallel with " + mergeStrategyProperty + "=pipelined, with an " + inputs
+			);
+		}
+		return new MergePlanner(Strategy.IN_MEMORY, 0, "fits in the heap, with an " + inputs);
+	}
+
+	Strategy getStrategy() {
+		return this.strategy;
+	}
+
+	void log() {
+		System.out.println(
+			"Merging " + this.strategy.getPropertyValue() +
+				(this.strategy == Strategy.SPILLED ? " in " + this.shardCount + " shard(s)" : "") + ": " + this.reason
+		);
+	}
+
+	void runSpilled(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords
+	) throws IOException, InterruptedException {
+		Path spillDir = Files.createTempDirectory("variant-annotation-spill");
+		try {
+			for (int shardIndex = 0; shardIndex < this.shardCount; shardIndex++) {
+				ShardedMerge.runShard(
+					shardIndex, this.shardCount, spillDir, diseaseGeneRecords, allHighPriorityVariantRecords
+				);
+			}
+			ShardedMerge.reassemble(this.shardCount, spillDir);
+		} finally {
+			try (Stream<Path> spillPaths = Files.walk(spillDir)) {
+				// Deletes the files in each directory before the directory itself
+				spillPaths.sorted(Comparator.reverseOrder()).forEach(spillPath -> {
+					try {
+						Files.delete(spillPath);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+			}
+		}
+	}
+
+	// Records kept off the heap only have their lookups there
+	private static long estimateRetainedAbridgedCosmicBytes(
+		long abridgedCosmicBytes, Predicate<String> curatedVariantNameFilter
+	) throws IOException {
+		if (Boolean.getBoolean(Main.offHeapCosmicRecordsProperty)) {
+			return 0;
+		}
+
+		long sampleBytes = 0;
+		int sampledLineCount = 0;
+		int curatedLineCount = 0;
+		// Read as UTF-8, as GenericRecord parses the file, and measured in encoded bytes to compare with its size
+		try (BufferedReader tsvFileReader = Files.newBufferedReader(
+			Paths.get(Main.getAbridgedCosmicFilePath()), StandardCharsets.UTF_8
+		)) {
+			// Skips the header
+			String tsvLine = tsvFileReader.readLine();
+			while (sampledLineCount < sampleLineCount && (tsvLine = tsvFileReader.readLine()) != null) {
+				sampleBytes += tsvLine.getBytes(StandardCharsets.UTF_8).length + 1;
+				sampledLineCount++;
+				if (curatedVariantNameFilter.test(getField(tsvLine, AbridgedCosmicRecord.VARIANT_NAME_FIELD))) {
+					curatedLineCount++;
+				}
+			}
+		}
+
+		if (sampledLineCount == 0) {
+			return 0;
+		}
+
+		double estimatedRecordCount = (double) abridgedCosmicBytes * sampledLineCount / sampleBytes;
+		return (long) (
+			estimatedRecordCount * curatedLineCount / sampledLineCount * abridgedCosmicRecordIndexBytesPerRecord
+		);
+	}
+
+	private static long ceilDiv(long dividend, long divisor) {
+		return (dividend + divisor - 1) / divisor;
+	}
+
+	enum Strategy {
+		IN_MEMORY("inMemory"),
+		PIPELINED("pipelined"),
+		SPILLED("spilled");
+
+		private String propertyValue;
+
+		Strategy(String propertyValue) {
+			this.propertyValue = propertyValue;
+		}
+
+		String getPropertyValue() {
+			return this.propertyValue;
+		}
+
+		static Strategy fromPropertyValue(String propertyValue) {
+			for (Strategy strategy : values()) {
+				if (strategy.getPropertyValue().equals(propertyValue)) {
+					return strategy;
+				}
+			}
+			throw new IllegalArgumentException(
+				mergeStrategyProperty + " must be auto, inMemory, pipelined or spilled, but received " + propertyValue
+			);
+		}
+	}
+}
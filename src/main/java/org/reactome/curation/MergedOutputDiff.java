@@ -0,0 +1,264 @@
+package org.reactome.curation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static java.lang.System.lineSeparator;
+import static org.reactome.curation.ConcurrencyUtilities.getResult;
+
+/**
+ * Compares two merged.txt files by variant name rather than by line.  Both files are streamed into partitions by the
+ * hash of the variant name, sized so a single partition fits comfortably in memory, and the partitions are compared in
+ * parallel.  The per partition reports are sorted by variant name and merged into one report listing the added,
+ * removed and changed variants, with one line per changed column.
+ */
+public class MergedOutputDiff {
+	static final String diffPartitionBytesProperty = "variantAnnotation.diffPartitionBytes";
+	private static final long defaultPartitionBytes = 64L * 1024 * 1024;
+	private static final int variantNameColumn = 3;
+
+	private static final String REPORT_HEADER = String.join("\t", "Change", "Variant_name", "Column", "Old", "New");
+	private static final String ADDED = "added";
+	private static final String REMOVED = "removed";
+	private static final String CHANGED = "changed";
+
+	public static void run(Path oldMergedFilePath, Path newMergedFilePath, Path reportFilePath)
+		throws IOException, InterruptedException {
+
+		String[] columnNames = Main.getOutputHeaderLine().trim().split("\t");
+		long partitionBytes = Long.getLong(diffPartitionBytesProperty, defaultPartitionBytes);
+		int partitionCount = (int) Math.max(
+			1, (Files.size(oldMergedFilePath) + Files.size(newMergedFilePath)) / partitionBytes
+		);
+
+		Path partitionDir = Files.createTempDirectory(
+			reportFilePath.toAbsolutePath().getParent(), "merged-diff"
+		);
+		try {
+			partition(oldMergedFilePath, partitionDir, "old", partitionCount);
+			partition(newMergedFilePath, partitionDir, "new", partitionCount);
+
+			ExecutorService executorService = Executors.newFixedThreadPool(
+				Math.min(partitionCount, Runtime.getRuntime().availableProcessors())
+			);
+			int[] changeCounts = new int[3];
+			try {
+				List<Future<int[]>> partitionChangeCounts = new ArrayList<>();
+				for (int partition = 0; partition < partitionCount; partition++) {
+					int partitionIndex = partition;
+					partitionChangeCounts.add(
+						executorService.submit(() -> diffPartition(partitionDir, partitionIndex, columnNames))
+					);
+				}
+
+				for (Future<int[]> partitionChangeCount : partitionChangeCounts) {
+					int[] counts = getResult(partitionChangeCount);
+					for (int change = 0; change < changeCounts.length; change++) {
+						changeCounts[change] += counts[change];
+					}
+				}
+			} finally {
+				executorService.shutdownNow();
+			}
+
+			mergePartitionReports(partitionDir, partitionCount, reportFilePath);
+
+			System.out.println(
+				changeCounts[0] + " added, " + changeCounts[1] + " removed and " + changeCounts[2] + " changed " +
+				"variant(s) between " + oldMergedFilePath + " and " + newMergedFilePath
+			);
+		} finally {
+			try (Stream<Path> partitionFiles = Files.list(partitionDir)) {
+				for (Path partitionFile : (Iterable<Path>) partitionFiles::iterator) {
+					Files.delete(partitionFile);
+				}
+			}
+			Files.delete(partitionDir);
+		}
+	}
+
+	private static void partition(Path mergedFilePath, Path partitionDir, String side, int partitionCount)
+		throws IOException {
+
+		List<BufferedWriter> partitionWriters = new ArrayList<>();
+		try (BufferedReader mergedFileReader = Files.newBufferedReader(mergedFilePath, Charset.defaultCharset())) {
+			GenericRecord.checkHeader(
+				mergedFilePath.toString(), Main.getOutputHeaderLine().trim(), mergedFileReader.readLine()
+			);
+
+			for (int partition = 0; partition < partitionCount; partition++) {
+				partitionWriters.add(Files.newBufferedWriter(
+					getPartitionFile(partitionDir, side, partition), StandardCharsets.UTF_8
+				));
+			}
+
+			String outputLine;
+			while ((outputLine = mergedFileReader.readLine()) != null) {
+				int partition = Math.floorMod(getVariantName(outputLine).hashCode(), partitionCount);
+
+				BufferedWriter partitionWriter = partitionWriters.get(partition);
+				partitionWriter.write(outputLine);
+				partitionWriter.write(lineSeparator());
+			}
+		} finally {
+			for (BufferedWriter partitionWriter : partitionWriters) {
+				partitionWriter.close();
+			}
+		}
+	}
+
+	// Returns the number of added, removed and changed variants in the partition
+	private static int[] diffPartition(Path partitionDir, int partition, String[] columnNames) throws IOException {
+		Map<String, String> variantNameToOldOutputLine = new HashMap<>();
+		try (BufferedReader oldPartitionReader = Files.newBufferedReader(
+			getPartitionFile(partitionDir, "old", partition), StandardCharsets.UTF_8
+		)) {
+			String outputLine;
+			while ((outputLine = oldPartitionReader.readLine()) != null) {
+				putUniqueVariantName(variantNameToOldOutputLine, outputLine);
+			}
+		}
+
+		Map<String, String> variantNameToNewOutputLine = new HashMap<>();
+		try (BufferedReader newPartitionReader = Files.newBufferedReader(
+			getPartitionFile(partitionDir, "new", partition), StandardCharsets.UTF_8
+		)) {
+			String outputLine;
+			while ((outputLine = newPartitionReader.readLine()) != null) {
+				putUniqueVariantName(variantNameToNewOutputLine, outputLine);
+			}
+		}
+
+		SortedSet<String> variantNames = new TreeSet<>(variantNameToOldOutputLine.keySet());
+		variantNames.addAll(variantNameToNewOutputLine.keySet());
+
+		int[] changeCounts = new int[3];
+		try (BufferedWriter reportWriter = Files.newBufferedWriter(
+			getPartitionFile(partitionDir, "report", partition), StandardCharsets.UTF_8
+		)) {
+			for (String variantName : variantNames) {
+				String oldOutputLine = variantNameToOldOutputLine.get(variantName);
+				String newOutputLine = variantNameToNewOutputLine.get(variantName);
+
+				if (oldOutputLine == null) {
+					writeReportLine(reportWriter, ADDED, variantName, "", "", "");
+					changeCounts[0]++;
+				} else if (newOutputLine == null) {
+					writeReportLine(reportWriter, REMOVED, variantName, "", "", "");
+					changeCounts[1]++;
+				} else if (!oldOutputLine.equals(newOutputLine)) {
+					String[] oldFields = oldOutputLine.split("\t", -1);
+					String[] newFields = newOutputLine.split("\t", -1);
+					for (int column = 0; column < columnNames.length; column++) {
+						String oldField = column < oldFields.length ? oldFields[column] : "";
+						String newField = column < newFields.length ? newFields[column] : "";
+						if (!oldField.equals(newField)) {
+							writeReportLine(reportWriter, CHANGED, variantName, columnNames[column], oldField, newField);
+						}
+					}
+					changeCounts[2]++;
+				}
+			}
+		}
+
+		return changeCounts;
+	}
+
+	private static void putUniqueVariantName(Map<String, String> variantNameToOutputLine, String outputLine) {
+		String variantName = getVariantName(outputLine);
+		if (variantNameToOutputLine.put(variantName, outputLine) != null) {
+			throw new IllegalArgumentException(variantName + " appears more than once in a merged file");
+		}
+	}
+
+	// Each variant name is in exactly one partition report, so its lines stay together and in column order
+	private static void mergePartitionReports(Path partitionDir, int partitionCount, Path reportFilePath)
+		throws IOException {
+
+		List<BufferedReader> partitionReaders = new ArrayList<>();
+		PriorityQueue<ReportLine> reportLines = new PriorityQueue<>(Comparator.comparing(ReportLine::getVariantName));
+
+		try (BufferedWriter reportWriter = Files.newBufferedWriter(reportFilePath, Charset.defaultCharset())) {
+			reportWriter.write(REPORT_HEADER);
+			reportWriter.write(lineSeparator());
+
+			for (int partition = 0; partition < partitionCount; partition++) {
+				BufferedReader partitionReader = Files.newBufferedReader(
+					getPartitionFile(partitionDir, "report", partition), StandardCharsets.UTF_8
+				);
+				partitionReaders.add(partitionReader);
+				addNextReportLine(reportLines, partitionReader);
+			}
+
+			while (!reportLines.isEmpty()) {
+				ReportLine reportLine = reportLines.poll();
+				reportWriter.write(reportLine.getLine());
+				reportWriter.write(lineSeparator());
+
+				addNextReportLine(reportLines, reportLine.getPartitionReader());
+			}
+		} finally {
+			for (BufferedReader partitionReader : partitionReaders) {
+				partitionReader.close();
+			}
+		}
+	}
+
+	private static void addNextReportLine(PriorityQueue<ReportLine> reportLines, BufferedReader partitionReader)
+		throws IOException {
+
+		String reportLine = partitionReader.readLine();
+		if (reportLine != null) {
+			reportLines.add(new ReportLine(reportLine, partitionReader));
+		}
+	}
+
+	private static void writeReportLine(
+		BufferedWriter reportWriter, String change, String variantName, String column, String oldValue, String newValue
+	) throws IOException {
+		reportWriter.write(String.join("\t", change, variantName, column, oldValue, newValue));
+		reportWriter.write(lineSeparator());
+	}
+
+	private static String getVariantName(String outputLine) {
+		return GenericRecord.getField(outputLine, variantNameColumn);
+	}
+
+	private static Path getPartitionFile(Path partitionDir, String side, int partition) {
+		return partitionDir.resolve(side + "-" + partition + ".txt");
+	}
+
+	private static class ReportLine {
+		private String variantName;
+		private String line;
+		private BufferedReader partitionReader;
+
+		private ReportLine(String line, BufferedReader partitionReader) {
+			this.variantName = GenericRecord.getField(line, 1);
+			this.line = line;
+			this.partitionReader = partitionReader;
+		}
+
+		String getVariantName() {
+			return this.variantName;
+		}
+
+		String getLine() {
+			return this.line;
+		}
+
+		BufferedReader getPartitionReader() {
+			return this.partitionReader;
+		}
+	}
+}
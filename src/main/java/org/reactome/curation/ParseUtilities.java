@@ -1,5 +1,7 @@
 package org.reactome.curation;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -24,25 +26,226 @@ public class ParseUtilities {
 	}
 
 	public static int parseReleaseVersion(String releaseVersion) {
-		return convertToInt(
-			releaseVersion.startsWith("V") ? releaseVersion.substring(1) : releaseVersion
-		);
+		return parseReleaseVersion(releaseVersion, 0, releaseVersion.length());
 	}
 
 	public static int convertToInt(String stringValue) {
-		return !stringValue.isEmpty() ? Integer.parseInt(stringValue) : -1;
+		return convertToInt(stringValue, 0, stringValue.length());
 	}
 
 	public static Boolean getBooleanFromYesNo(String yesOrNo) {
-		if (yesOrNo.toLowerCase().startsWith("yes")) {
+		return getBooleanFromYesNo(yesOrNo, 0, yesOrNo.length());
+	}
+
+	// The decoders below read a range of a line in place and only create a string to report a value they reject,
+	// which they reject with the same exceptions and messages as their string equivalents above
+
+	public static List<Long> parseLongList(CharSequence line, int start, int end) {
+		List<Long> longs = new ArrayList<>();
+		int elementStart = start;
+		while (elementStart <= end) {
+			int elementEnd = elementStart;
+			while (elementEnd < end && line.charAt(elementEnd) != ',') {
+				elementEnd++;
+			}
+
+			int trimmedStart = elementStart;
+			int trimmedEnd = elementEnd;
+			while (trimmedStart < trimmedEnd && line.charAt(trimmedStart) <= ' ') {
+				trimmedStart++;
+			}
+			while (trimmedEnd > trimmedStart && line.charAt(trimmedEnd - 1) <= ' ') {
+				trimmedEnd--;
+			}
+			if (trimmedStart < trimmedEnd) {
+				longs.add(parseLong(line, trimmedStart, trimmedEnd));
+			}
+
+			elementStart = elementEnd + 1;
+		}
+		return longs;
+	}
+
+	public static int parseReleaseVersion(CharSequence line, int start, int end) {
+		return convertToInt(line, start < end && line.charAt(start) == 'V' ? start + 1 : start, end);
+	}
+
+	public static int parseReleaseVersion(byte[] line, int start, int end) {
+		return convertToInt(line, start < end && line[start] == 'V' ? start + 1 : start, end);
+	}
+
+	public static int convertToInt(CharSequence line, int start, int end) {
+		return start < end ? (int) parseLong(line, start, end, Integer.MAX_VALUE) : -1;
+	}
+
+	public static int convertToInt(byte[] line, int start, int end) {
+		return start < end ? (int) parseLong(line, start, end, Integer.MAX_VALUE) : -1;
+	}
+
+	public static long parseLong(CharSequence line, int start, int end) {
+		return parseLong(line, start, end, Long.MAX_VALUE);
+	}
+
+	public static long parseLong(byte[] line, int start, int end) {
+		return parseLong(line, start, end, Long.MAX_VALUE);
+	}
+
+	public static Boolean getBooleanFromYesNo(CharSequence line, int start, int end) {
+		if (startsWithIgnoringCase(line, start, end, "yes")) {
 			return true;
-		} else if (yesOrNo.toLowerCase().startsWith("no")) {
+		} else if (startsWithIgnoringCase(line, start, end, "no")) {
 			return false;
-		} else if (yesOrNo.isEmpty()) {
+		} else if (start == end) {
 			return null;
 		} else {
-			throw new IllegalArgumentException("String parameter must be 'yes' or 'no', but received - " + yesOrNo);
+			throw new IllegalArgumentException(
+				"String parameter must be 'yes' or 'no', but received - " + line.subSequence(start, end)
+			);
+		}
+	}
+
+	public static Boolean getBooleanFromYesNo(byte[] line, int start, int end) {
+		if (!isAscii(line, start, end)) {
+			return getBooleanFromYesNo(decode(line, start, end));
+		}
+
+		if (startsWithIgnoringCase(line, start, end, "yes")) {
+			return true;
+		} else if (startsWithIgnoringCase(line, start, end, "no")) {
+			return false;
+		} else if (start == end) {
+			return null;
+		} else {
+			throw new IllegalArgumentException(
+				"String parameter must be 'yes' or 'no', but received - " + decode(line, start, end)
+			);
+		}
+	}
+
+	// Accumulates negatively as Long.parseLong does, so the most negative value parses without overflowing
+	private static long parseLong(CharSequence line, int start, int end, long maxValue) {
+		if (start == end) {
+			throw forInputString(line.subSequence(start, end));
+		}
+
+		int index = start;
+		boolean negative = false;
+		long limit = -maxValue;
+		char firstChar = line.charAt(start);
+		if (firstChar < '0') {
+			if (firstChar == '-') {
+				negative = true;
+				limit = -maxValue - 1;
+			} else if (firstChar != '+') {
+				throw forInputString(line.subSequence(start, end));
+			}
+			if (end - start == 1) {
+				throw forInputString(line.subSequence(start, end));
+			}
+			index++;
+		}
+
+		long multiplicationLimit = limit / 10;
+		long result = 0;
+		while (index < end) {
+			int digit = Character.digit(line.charAt(index++), 10);
+			if (digit < 0 || result < multiplicationLimit) {
+				throw forInputString(line.subSequence(start, end));
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw forInputString(line.subSequence(start, end));
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	private static long parseLong(byte[] line, int start, int end, long maxValue) {
+		// Character.digit accepts non-ASCII digits, which only the decoded string has
+		if (!isAscii(line, start, end)) {
+			String decodedLine = decode(line, start, end);
+			return parseLong(decodedLine, 0, decodedLine.length(), maxValue);
 		}
+
+		if (start == end) {
+			throw forInputString(decode(line, start, end));
+		}
+
+		int index = start;
+		boolean negative = false;
+		long limit = -maxValue;
+		byte firstByte = line[start];
+		if (firstByte < '0') {
+			if (firstByte == '-') {
+				negative = true;
+				limit = -maxValue - 1;
+			} else if (firstByte != '+') {
+				throw forInputString(decode(line, start, end));
+			}
+			if (end - start == 1) {
+				throw forInputString(decode(line, start, end));
+			}
+			index++;
+		}
+
+		long multiplicationLimit = limit / 10;
+		long result = 0;
+		while (index < end) {
+			int digit = line[index++] - '0';
+			if (digit < 0 || digit > 9 || result < multiplicationLimit) {
+				throw forInputString(decode(line, start, end));
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw forInputString(decode(line, start, end));
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	private static boolean startsWithIgnoringCase(CharSequence line, int start, int end, String lowerCasePrefix) {
+		if (end - start < lowerCasePrefix.length()) {
+			return false;
+		}
+		for (int index = 0; index < lowerCasePrefix.length(); index++) {
+			if (Character.toLowerCase(line.charAt(start + index)) != lowerCasePrefix.charAt(index)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean startsWithIgnoringCase(byte[] line, int start, int end, String lowerCasePrefix) {
+		if (end - start < lowerCasePrefix.length()) {
+			return false;
+		}
+		for (int index = 0; index < lowerCasePrefix.length(); index++) {
+			byte lineByte = line[start + index];
+			if ((lineByte >= 'A' && lineByte <= 'Z' ? lineByte + ('a' - 'A') : lineByte) !=
+				lowerCasePrefix.charAt(index)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAscii(byte[] line, int start, int end) {
+		for (int index = start; index < end; index++) {
+			if (line[index] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String decode(byte[] line, int start, int end) {
+		return new String(line, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	private static NumberFormatException forInputString(CharSequence input) {
+		return new NumberFormatException("For input string: \"" + input + "\"");
 	}
 
 	public static boolean equalOrBothNull(Object obj1, Object obj2) {
@@ -0,0 +1,395 @@
+package org.reactome.curation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static java.lang.System.lineSeparator;
+import static org.reactome.curation.ConcurrencyUtilities.getResult;
+
+/**
+ * Writes the merged output as partition files from concurrent writers, one per partition of the variant names by hash.
+ * Each partition's merged.txt and merged.err lines are written in ordinal order, with an index file giving the ordinal
+ * and length in bytes of each entry, and a manifest lists every partition file with its entry count, length and CRC32
+ * checksum.  Concatenation merges the partition indices by ordinal and copies each run of entries from one partition
+ * file with FileChannel.transferTo, which reproduces the merged.txt and merged.err of a single node run.
+ */
+public class PartitionedOutput {
+	static final String manifestFile = "manifest.tsv";
+
+	private static final String indexFileExtension = ".idx";
+	// An ordinal and a length in bytes
+	private static final int indexEntryBytes = Long.BYTES + Integer.BYTES;
+
+	public static void write(int partitionCount, Path partitionDir) throws IOException, InterruptedException {
+		if (partitionCount < 1) {
+			throw new IllegalArgumentException("Partition count must be at least 1, but received " + partitionCount);
+		}
+
+		Files.createDirectories(partitionDir);
+		Files.deleteIfExists(partitionDir.resolve(manifestFile));
+
+		List<DiseaseGeneRecord> diseaseGeneRecords = Main.parseDiseaseGeneRecords();
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords = Main.parseHighPriorityVariantRecords();
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
+			Main.getVariantNameToAbridgedCosmicRecords(
+				Main.getCuratedVariantNameFilter(diseaseGeneRecords, allHighPriorityVariantRecords)
+			);
+
+		List<String> manifestLines = new ArrayList<>();
+		manifestLines.add(String.join("\t", "Merged_file", "Partition", "Partition_file", "Entries", "Bytes", "CRC32"));
+
+		ExecutorService executorService = Executors.newFixedThreadPool(partitionCount);
+		try {
+			List<Future<List<String>>> partitionManifestLines = new ArrayList<>();
+			for (int partitionIndex = 0; partitionIndex < partitionCount; partitionIndex++) {
+				int currentPartitionIndex = partitionIndex;
+				partitionManifestLines.add(executorService.submit(() -> writePartition(
+					currentPartitionIndex,
+					partitionCount,
+					partitionDir,
+					diseaseGeneRecords,
+					allHighPriorityVariantRecords,
+					variantNameToAbridgedCosmicRecords
+				)));
+			}
+
+			for (Future<List<String>> partitionManifestLine : partitionManifestLines) {
+				manifestLines.addAll(getResult(partitionManifestLine));
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		// The manifest is written last, so a partition directory with one holds a complete set of partition files
+		Files.write(partitionDir.resolve(manifestFile), manifestLines);
+	}
+
+	public static void concatenate(Path partitionDir) throws IOException {
+		Path manifestFilePath = partitionDir.resolve(manifestFile);
+		if (!Files.exists(manifestFilePath)) {
+			throw new IllegalStateException("There is no " + manifestFile + " in " + partitionDir + " to concatenate");
+		}
+
+		Map<String, List<PartitionFile>> mergedFileToPartitionFiles = new LinkedHashMap<>();
+		mergedFileToPartitionFiles.put(Main.outputFile, new ArrayList<>());
+		mergedFileToPartitionFiles.put(Main.errorFile, new ArrayList<>());
+
+		List<String> manifestLines = Files.readAllLines(manifestFilePath);
+		// Skips the header
+		for (String manifestLine : manifestLines.subList(1, manifestLines.size())) {
+			PartitionFile partitionFile = PartitionFile.parse(partitionDir, manifestLine);
+			mergedFileToPartitionFiles.get(partitionFile.getMergedFile()).add(partitionFile);
+		}
+
+		Path outputFilePath = Paths.get(Main.outputFile);
+		Path errorFilePath = Paths.get(Main.errorFile);
+		Files.deleteIfExists(outputFilePath);
+		Files.deleteIfExists(errorFilePath);
+
+		concatenate(mergedFileToPartitionFiles.get(Main.outputFile), outputFilePath, Main.getOutputHeaderLine());
+
+		// A single node run only creates the error file when there is something to report
+		List<PartitionFile> errorPartitionFiles = mergedFileToPartitionFiles.get(Main.errorFile);
+		if (errorPartitionFiles.stream().anyMatch(partitionFile -> partitionFile.getEntryCount() > 0)) {
+			concatenate(errorPartitionFiles, errorFilePath, "");
+		}
+
+		Main.writeColumnarOutputIfRequested();
+	}
+
+	private static List<String> writePartition(
+		int partitionIndex,
+		int partitionCount,
+		Path partitionDir,
+		List<DiseaseGeneRecord> allDiseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords
+	) throws IOException {
+		Predicate<String> isInPartition =
+			variantName -> ShardedMerge.isInShard(variantName, partitionIndex, partitionCount);
+
+		List<Integer> diseaseGeneRecordIndices = ShardedMerge.getRecordIndicesInShard(
+			allDiseaseGeneRecords, DiseaseGeneRecord::getVariantName, isInPartition
+		);
+		List<Integer> highPriorityVariantRecordIndices = ShardedMerge.getRecordIndicesInShard(
+			allHighPriorityVariantRecords, HighPriorityVariantRecord::getVariantName, isInPartition
+		);
+
+		try (
+			PartitionWriter outputWriter =
+				new PartitionWriter(partitionDir, Main.outputFile, partitionIndex, partitionCount);
+			PartitionWriter errorWriter =
+				new PartitionWriter(partitionDir, Main.errorFile, partitionIndex, partitionCount)
+		) {
+			Main.mergeRecords(
+				ShardedMerge.getRecords(allDiseaseGeneRecords, diseaseGeneRecordIndices),
+				ShardedMerge.getRecords(allHighPriorityVariantRecords, highPriorityVariantRecordIndices),
+				variantNameToAbridgedCosmicRecords,
+				new Main.MergeListener() {
+					@Override
+					public void onOutputLine(int pass, int recordIndex, String variantName, String outputLine) {
+						outputWriter.write(getOrdinal(pass, recordIndex), outputLine);
+					}
+
+					@Override
+					public void onErrors(int pass, int recordIndex, List<String> errors) {
+						StringBuilder errorText = new StringBuilder();
+						for (String error : errors) {
+							errorText.append(error).append(lineSeparator());
+						}
+						errorWriter.write(getOrdinal(pass, recordIndex), errorText.toString());
+					}
+
+					private long getOrdinal(int pass, int recordIndex) {
+						List<Integer> recordIndices = pass == Main.DISEASE_GENE_PASS ?
+							diseaseGeneRecordIndices :
+							highPriorityVariantRecordIndices;
+
+						return Main.getRecordOrdinal(pass, recordIndices.get(recordIndex));
+					}
+				}
+			);
+
+			// The counts and checksums cover every byte written, so they are complete before the files are closed
+			return Arrays.asList(outputWriter.getManifestLine(), errorWriter.getManifestLine());
+		}
+	}
+
+	private static void concatenate(List<PartitionFile> partitionFiles, Path mergedFilePath, String header)
+		throws IOException {
+
+		List<Closeable> openFiles = new ArrayList<>();
+		PriorityQueue<PartitionCursor> partitionCursors =
+			new PriorityQueue<>(Comparator.comparingLong(PartitionCursor::getOrdinal));
+
+		try (FileChannel mergedFileChannel = FileChannel.open(
+			mergedFilePath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+		)) {
+			ByteBuffer headerBytes = ByteBuffer.wrap(header.getBytes());
+			while (headerBytes.hasRemaining()) {
+				mergedFileChannel.write(headerBytes);
+			}
+
+			for (PartitionFile partitionFile : partitionFiles) {
+				partitionFile.checkLengths();
+
+				FileChannel partitionFileChannel = FileChannel.open(partitionFile.getPath(), StandardOpenOption.READ);
+				openFiles.add(partitionFileChannel);
+				DataInputStream indexStream = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(partitionFile.getIndexPath()))
+				);
+				openFiles.add(indexStream);
+
+				PartitionCursor partitionCursor =
+					new PartitionCursor(partitionFileChannel, indexStream, partitionFile.getEntryCount());
+				if (partitionCursor.next()) {
+					partitionCursors.add(partitionCursor);
+				}
+			}
+
+			// Consecutive entries of one partition file are next to each other in it, so they are copied in one run
+			while (!partitionCursors.isEmpty()) {
+				PartitionCursor partitionCursor = partitionCursors.poll();
+				long runPosition = partitionCursor.getPosition();
+				long runBytes = 0;
+
+				boolean anyEntriesLeft;
+				do {
+					runBytes += partitionCursor.getEntryBytes();
+					anyEntriesLeft = partitionCursor.next();
+				} while (
+					anyEntriesLeft &&
+					(partitionCursors.isEmpty() || partitionCursor.getOrdinal() < partitionCursors.peek().getOrdinal())
+				);
+
+				transfer(partitionCursor.getPartitionFileChannel(), runPosition, runBytes, mergedFileChannel);
+				if (anyEntriesLeft) {
+					partitionCursors.add(partitionCursor);
+				}
+			}
+		} finally {
+			for (Closeable openFile : openFiles) {
+				openFile.close();
+			}
+		}
+	}
+
+	// A single transfer may copy fewer bytes than asked for
+	private static void transfer(FileChannel sourceChannel, long position, long byteCount, FileChannel targetChannel)
+		throws IOException {
+
+		while (byteCount > 0) {
+			long transferredBytes = sourceChannel.transferTo(position, byteCount, targetChannel);
+			position += transferredBytes;
+			byteCount -= transferredBytes;
+		}
+	}
+
+	private static String getPartitionFileName(String mergedFile, int partitionIndex, int partitionCount) {
+		return "part-" + partitionIndex + "-of-" + partitionCount + "-" + mergedFile;
+	}
+
+	private static class PartitionWriter implements Closeable {
+		private String mergedFile;
+		private int partitionIndex;
+		private String partitionFileName;
+		private CRC32 checksum = new CRC32();
+		private OutputStream partitionStream;
+		private DataOutputStream indexStream;
+		private int entryCount;
+		private long byteCount;
+
+		PartitionWriter(Path partitionDir, String mergedFile, int partitionIndex, int partitionCount)
+			throws IOException {
+
+			this.mergedFile = mergedFile;
+			this.partitionIndex = partitionIndex;
+			this.partitionFileName = getPartitionFileName(mergedFile, partitionIndex, partitionCount);
+
+			this.partitionStream = new CheckedOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(partitionDir.resolve(this.partitionFileName))),
+				this.checksum
+			);
+			this.indexStream = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(partitionDir.resolve(this.partitionFileName + indexFileExtension))
+			));
+		}
+
+		void write(long ordinal, String text) {
+			byte[] bytes = text.getBytes();
+			try {
+				this.partitionStream.write(bytes);
+				this.indexStream.writeLong(ordinal);
+				this.indexStream.writeInt(bytes.length);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			this.entryCount++;
+			this.byteCount += bytes.length;
+		}
+
+		String getManifestLine() {
+			return String.join(
+				"\t",
+				this.mergedFile,
+				Integer.toString(this.partitionIndex),
+				this.partitionFileName,
+				Integer.toString(this.entryCount),
+				Long.toString(this.byteCount),
+				String.format("%08x", this.checksum.getValue())
+			);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				this.partitionStream.close();
+			} finally {
+				this.indexStream.close();
+			}
+		}
+	}
+
+	private static class PartitionFile {
+		private String mergedFile;
+		private Path path;
+		private int entryCount;
+		private long byteCount;
+
+		private PartitionFile(String mergedFile, Path path, int entryCount, long byteCount) {
+			this.mergedFile = mergedFile;
+			this.path = path;
+			this.entryCount = entryCount;
+			this.byteCount = byteCount;
+		}
+
+		static PartitionFile parse(Path partitionDir, String manifestLine) {
+			String[] fields = manifestLine.split("\t");
+			return new PartitionFile(
+				fields[0], partitionDir.resolve(fields[2]), Integer.parseInt(fields[3]), Long.parseLong(fields[4])
+			);
+		}
+
+		// Checking the lengths is enough to catch a partition file that is missing entries, while the checksums are
+		// left for anything reading partition files directly, as verifying them would mean reading every byte again
+		void checkLengths() throws IOException {
+			if (Files.size(this.path) != this.byteCount ||
+				Files.size(getIndexPath()) != (long) this.entryCount * indexEntryBytes) {
+				throw new IllegalStateException(
+					this.path + " does not have the " + this.entryCount + " entries and " + this.byteCount +
+					" bytes given in " + manifestFile
+				);
+			}
+		}
+
+		String getMergedFile() {
+			return this.mergedFile;
+		}
+
+		Path getPath() {
+			return this.path;
+		}
+
+		Path getIndexPath() {
+			return Paths.get(this.path + indexFileExtension);
+		}
+
+		int getEntryCount() {
+			return this.entryCount;
+		}
+	}
+
+	private static class PartitionCursor {
+		private FileChannel partitionFileChannel;
+		private DataInputStream indexStream;
+		private int entriesLeft;
+
+		private long ordinal;
+		private long position;
+		private int entryBytes;
+
+		PartitionCursor(FileChannel partitionFileChannel, DataInputStream indexStream, int entryCount) {
+			this.partitionFileChannel = partitionFileChannel;
+			this.indexStream = indexStream;
+			this.entriesLeft = entryCount;
+		}
+
+		boolean next() throws IOException {
+			this.position += this.entryBytes;
+			if (this.entriesLeft == 0) {
+				return false;
+			}
+
+			this.ordinal = this.indexStream.readLong();
+			this.entryBytes = this.indexStream.readInt();
+			this.entriesLeft--;
+			return true;
+		}
+
+		FileChannel getPartitionFileChannel() {
+			return this.partitionFileChannel;
+		}
+
+		long getOrdinal() {
+			return this.ordinal;
+		}
+
+		long getPosition() {
+			return this.position;
+		}
+
+		int getEntryBytes() {
+			return this.entryBytes;
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package org.reactome.curation;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.lang.System.lineSeparator;
+import static org.reactome.curation.ConcurrencyUtilities.getResult;
+
+/**
+ * Runs the merge as overlapping stages connected by a bounded queue: merging the disease gene and high priority
+ * variant records in batches and writing the output.  The queue holds futures in input order, so the merge stage can
+ * hand its batches to a shared pool of workers while the writer still consumes the results in order, and a full queue
+ * holds back the merge stage.  The abridged cosmic records come from the same source as in any other merge.  An
+ * abridged cosmic file is not grouped by variant name, so no variant's records are complete before it has been read
+ * to the end, and the merge stage starts as soon as they have been.
+ */
+public class PipelinedMerge {
+	private static final int batchSize = 1024;
+	private static final int queueCapacity = 64;
+
+	public static void run(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords
+	) throws IOException, InterruptedException {
+		Files.deleteIfExists(Paths.get(Main.outputFile));
+		Files.deleteIfExists(Paths.get(Main.errorFile));
+
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
+			Main.getVariantNameToAbridgedCosmicRecords(
+				Main.getCuratedVariantNameFilter(diseaseGeneRecords, allHighPriorityVariantRecords)
+			);
+
+		ThreadFactory virtualThreadFactory = getVirtualThreadFactory();
+		ThreadFactory threadFactory = virtualThreadFactory != null ? virtualThreadFactory : getDaemonThreadFactory();
+		ExecutorService workers = virtualThreadFactory != null ?
+			Executors.newCachedThreadPool(virtualThreadFactory) :
+			Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threadFactory);
+
+		try {
+			mergeAndWrite(
+				diseaseGeneRecords,
+				allHighPriorityVariantRecords,
+				variantNameToAbridgedCosmicRecords,
+				workers,
+				threadFactory
+			);
+		} finally {
+			workers.shutdownNow();
+		}
+
+		Main.writeColumnarOutputIfRequested();
+	}
+
+	private static void mergeAndWrite(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords,
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords,
+		ExecutorService workers,
+		ThreadFactory threadFactory
+	) throws IOException, InterruptedException {
+		Map<String, List<HighPriorityVariantRecord>> variantNameToHighPriorityVariantRecords =
+			Main.groupHighPriorityVariantRecords(allHighPriorityVariantRecords);
+
+		BlockingQueue<Future<MergedBatch>> mergedBatches = new ArrayBlockingQueue<>(queueCapacity);
+
+		startStage(threadFactory, mergedBatches, () -> {
+			for (int firstIndex = 0; firstIndex < diseaseGeneRecords.size(); firstIndex += batchSize) {
+				int batchStart = firstIndex;
+				int batchEnd = Math.min(firstIndex + batchSize, diseaseGeneRecords.size());
+
+				mergedBatches.put(workers.submit(() -> {
+					MergedBatch mergedBatch = new MergedBatch(Main.DISEASE_GENE_PASS, batchEnd - 1);
+					for (int recordIndex = batchStart; recordIndex < batchEnd; recordIndex++) {
+						Main.mergeDiseaseGeneRecord(
+							recordIndex,
+							diseaseGeneRecords.get(recordIndex),
+							variantNameToHighPriorityVariantRecords,
+							variantNameToAbridgedCosmicRecords,
+							mergedBatch
+						);
+					}
+					return mergedBatch;
+				}));
+			}
+
+			for (int firstIndex = 0; firstIndex < allHighPriorityVariantRecords.size(); firstIndex += batchSize) {
+				int batchStart = firstIndex;
+				int batchEnd = Math.min(firstIndex + batchSize, allHighPriorityVariantRecords.size());
+
+				mergedBatches.put(workers.submit(() -> {
+					MergedBatch mergedBatch = new MergedBatch(Main.HIGH_PRIORITY_VARIANT_PASS, batchEnd - 1);
+					for (int recordIndex = batchStart; recordIndex < batchEnd; recordIndex++) {
+						Main.mergeHighPriorityVariantRecord(
+							recordIndex,
+							allHighPriorityVariantRecords.get(recordIndex),
+							variantNameToAbridgedCosmicRecords,
+							mergedBatch
+						);
+					}
+					return mergedBatch;
+				}));
+			}
+		});
+
+		try (OrderedOutputWriter outputWriter = new OrderedOutputWriter(
+			getVariantNameToLastOrdinal(diseaseGeneRecords, allHighPriorityVariantRecords)
+		)) {
+			MergedBatch mergedBatch;
+			while ((mergedBatch = getResult(mergedBatches.take())) != null) {
+				mergedBatch.replay(outputWriter);
+				outputWriter.writeCompletedOutputLines(mergedBatch.getLastOrdinal());
+			}
+		}
+	}
+
+	// The ordinal of the last record in either pass that can still change the output line of each variant name
+	private static Map<String, Long> getVariantNameToLastOrdinal(
+		List<DiseaseGeneRecord> diseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords
+	) {
+		Map<String, Long> variantNameToLastOrdinal = new HashMap<>();
+
+		for (int recordIndex = 0; recordIndex < diseaseGeneRecords.size(); recordIndex++) {
+			variantNameToLastOrdinal.put(
+				diseaseGeneRecords.get(recordIndex).getVariantName(),
+				Main.getRecordOrdinal(Main.DISEASE_GENE_PASS, recordIndex)
+			);
+		}
+		for (int recordIndex = 0; recordIndex < allHighPriorityVariantRecords.size(); recordIndex++) {
+			variantNameToLastOrdinal.put(
+				allHighPriorityVariantRecords.get(recordIndex).getVariantName(),
+				Main.getRecordOrdinal(Main.HIGH_PRIORITY_VARIANT_PASS, recordIndex)
+			);
+		}
+
+		return variantNameToLastOrdinal;
+	}
+
+	private static <T> void startStage(ThreadFactory threadFactory, BlockingQueue<Future<T>> output, Stage stage) {
+		threadFactory.newThread(() -> {
+			CompletableFuture<T> endOfOutput = new CompletableFuture<>();
+			try {
+				stage.run();
+				endOfOutput.complete(null);
+			} catch (Throwable t) {
+				endOfOutput.completeExceptionally(t);
+			}
+
+			try {
+				output.put(endOfOutput);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}).start();
+	}
+
+	// Thread.ofVirtual() is only available from Java 21, so it is looked up reflectively
+	private static ThreadFactory getVirtualThreadFactory() {
+		try {
+			Object virtualThreadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+				.getMethod("factory")
+				.invoke(virtualThreadBuilder);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	private static ThreadFactory getDaemonThreadFactory() {
+		ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+
+		return runnable -> {
+			Thread thread = defaultThreadFactory.newThread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private interface Stage {
+		void run() throws Exception;
+	}
+
+	private static class MergedBatch implements Main.MergeListener {
+		private long lastOrdinal;
+		private List<MergeEvent> mergeEvents = new ArrayList<>();
+
+		private MergedBatch(int pass, int lastRecordIndex) {
+			this.lastOrdinal = Main.getRecordOrdinal(pass, lastRecordIndex);
+		}
+
+		@Override
+		public void onOutputLine(int pass, int recordIndex, String variantName, String outputLine) {
+			this.mergeEvents.add(new MergeEvent(pass, recordIndex, variantName, outputLine, null));
+		}
+
+		@Override
+		public void onErrors(int pass, int recordIndex, List<String> errors) {
+			this.mergeEvents.add(new MergeEvent(pass, recordIndex, null, null, errors));
+		}
+
+		void replay(Main.MergeListener mergeListener) {
+			for (MergeEvent mergeEvent : this.mergeEvents) {
+				mergeEvent.replay(mergeListener);
+			}
+		}
+
+		long getLastOrdinal() {
+			return this.lastOrdinal;
+		}
+	}
+
+	private static class MergeEvent {
+		private int pass;
+		private int recordIndex;
+		private String variantName;
+		private String outputLine;
+		private List<String> errors;
+
+		private MergeEvent(int pass, int recordIndex, String variantName, String outputLine, List<String> errors) {
+			this.pass = pass;
+			this.recordIndex = recordIndex;
+			this.variantName = variantName;
+			this.outputLine = outputLine;
+			this.errors = errors;
+		}
+
+		void replay(Main.MergeListener mergeListener) {
+			if (this.errors != null) {
+				mergeListener.onErrors(this.pass, this.recordIndex, this.errors);
+			} else {
+				mergeListener.onOutputLine(this.pass, this.recordIndex, this.variantName, this.outputLine);
+			}
+		}
+	}
+
+	/**
+	 * Writes output lines as soon as no later record can replace them.  Lines are kept in the order their variant name
+	 * was first output, so a line waiting for a later record holds back the lines after it.
+	 */
+	private static class OrderedOutputWriter implements Main.MergeListener, Closeable {
+		private Map<String, Long> variantNameToLastOrdinal;
+		private Map<String, String> pendingOutputLines = new LinkedHashMap<>();
+		private BufferedWriter outputWriter;
+		private BufferedWriter errorWriter;
+
+		private OrderedOutputWriter(Map<String, Long> variantNameToLastOrdinal) throws IOException {
+			this.variantNameToLastOrdinal = variantNameToLastOrdinal;
+			this.outputWriter = Main.newOutputWriter(Paths.get(Main.outputFile));
+			this.outputWriter.write(Main.getOutputHeaderLine());
+		}
+
+		@Override
+		public void onOutputLine(int pass, int recordIndex, String variantName, String outputLine) {
+			this.pendingOutputLines.put(variantName, outputLine);
+		}
+
+		@Override
+		public void onErrors(int pass, int recordIndex, List<String> errors) {
+			try {
+				// Like a single threaded run, the error file is only created once there is an error to report
+				if (this.errorWriter == null) {
+					this.errorWriter = Main.newOutputWriter(Paths.get(Main.errorFile));
+				}
+				for (String error : errors) {
+					this.errorWriter.write(error.concat(lineSeparator()));
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		void writeCompletedOutputLines(long mergedThroughOrdinal) throws IOException {
+			Iterator<Map.Entry<String, String>> pendingOutputLineIterator = this.pendingOutputLines.entrySet().iterator();
+			while (pendingOutputLineIterator.hasNext()) {
+				Map.Entry<String, String> pendingOutputLine = pendingOutputLineIterator.next();
+				if (this.variantNameToLastOrdinal.get(pendingOutputLine.getKey()) > mergedThroughOrdinal) {
+					return;
+				}
+
+				this.outputWriter.write(pendingOutputLine.getValue());
+				pendingOutputLineIterator.remove();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				writeCompletedOutputLines(Long.MAX_VALUE);
+				this.outputWriter.close();
+			} finally {
+				if (this.errorWriter != null) {
+					this.errorWriter.close();
+				}
+			}
+		}
+	}
+}
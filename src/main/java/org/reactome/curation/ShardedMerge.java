@@ -0,0 +1,285 @@
+package org.reactome.curation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static java.lang.System.lineSeparator;
+
+/**
+ * Splits a merge across several worker processes sharing a local directory.  Each worker keeps only the records whose
+ * variant name hashes into its shard and writes its partial merged.txt/merged.err with every line prefixed by the
+ * ordinal of the input record that produced it.  Reassembly merges the partial files by ordinal, which reproduces
+ * the output of a single node run.
+ */
+public class ShardedMerge {
+	private static final String completedMarkerFile = "shard.done";
+	private static final long shardPollIntervalMillis = 1000;
+
+	public static void runShard(int shardIndex, int shardCount, Path sharedDir) throws IOException {
+		runShard(
+			shardIndex,
+			shardCount,
+			sharedDir,
+			Main.parseDiseaseGeneRecords(),
+			Main.parseHighPriorityVariantRecords()
+		);
+	}
+
+	// Takes the curated records already parsed, so a run merging every shard in turn parses them only once
+	static void runShard(
+		int shardIndex,
+		int shardCount,
+		Path sharedDir,
+		List<DiseaseGeneRecord> allDiseaseGeneRecords,
+		List<HighPriorityVariantRecord> allHighPriorityVariantRecords
+	) throws IOException {
+		checkShardArguments(shardIndex, shardCount);
+
+		Path shardDir = getShardDir(sharedDir, shardIndex, shardCount);
+		Files.createDirectories(shardDir);
+		Files.deleteIfExists(shardDir.resolve(completedMarkerFile));
+
+		Predicate<String> isInShard = variantName -> isInShard(variantName, shardIndex, shardCount);
+
+		List<Integer> diseaseGeneRecordIndices =
+			getRecordIndicesInShard(allDiseaseGeneRecords, DiseaseGeneRecord::getVariantName, isInShard);
+		List<Integer> highPriorityVariantRecordIndices = getRecordIndicesInShard(
+			allHighPriorityVariantRecords, HighPriorityVariantRecord::getVariantName, isInShard
+		);
+
+		List<DiseaseGeneRecord> diseaseGeneRecords = getRecords(allDiseaseGeneRecords, diseaseGeneRecordIndices);
+		List<HighPriorityVariantRecord> highPriorityVariantRecords =
+			getRecords(allHighPriorityVariantRecords, highPriorityVariantRecordIndices);
+
+		Map<String, List<AbridgedCosmicRecord>> variantNameToAbridgedCosmicRecords =
+			Main.getVariantNameToAbridgedCosmicRecords(
+				isInShard.and(Main.getCuratedVariantNameFilter(diseaseGeneRecords, highPriorityVariantRecords))
+			);
+
+		// Ordinals increase monotonically as the merge proceeds, so insertion order is also ordinal order
+		Map<String, Long> variantNameToOrdinal = new LinkedHashMap<>();
+		Map<String, String> variantNameToOutputLine = new HashMap<>();
+
+		try (BufferedWriter errorWriter = Files.newBufferedWriter(shardDir.resolve(Main.errorFile))) {
+			Main.mergeRecords(
+				diseaseGeneRecords,
+				highPriorityVariantRecords,
+				variantNameToAbridgedCosmicRecords,
+				new Main.MergeListener() {
+					@Override
+					public void onOutputLine(int pass, int recordIndex, String variantName, String outputLine) {
+						variantNameToOrdinal.putIfAbsent(variantName, getOrdinal(pass, recordIndex));
+						variantNameToOutputLine.put(variantName, outputLine);
+					}
+
+					@Override
+					public void onErrors(int pass, int recordIndex, List<String> errors) {
+						long ordinal = getOrdinal(pass, recordIndex);
+						for (String error : errors) {
+							writeOrdinalLines(errorWriter, ordinal, error.concat(lineSeparator()));
+						}
+					}
+
+					private long getOrdinal(int pass, int recordIndex) {
+						List<Integer> recordIndices = pass == Main.DISEASE_GENE_PASS ?
+							diseaseGeneRecordIndices :
+							highPriorityVariantRecordIndices;
+
+						return Main.getRecordOrdinal(pass, recordIndices.get(recordIndex));
+					}
+				}
+			);
+		}
+
+		try (BufferedWriter outputWriter = Files.newBufferedWriter(shardDir.resolve(Main.outputFile))) {
+			for (Map.Entry<String, Long> variantNameAndOrdinal : variantNameToOrdinal.entrySet()) {
+				writeOrdinalLines(
+					outputWriter,
+					variantNameAndOrdinal.getValue(),
+					variantNameToOutputLine.get(variantNameAndOrdinal.getKey())
+				);
+			}
+		}
+
+		Files.createFile(shardDir.resolve(completedMarkerFile));
+	}
+
+	public static void reassemble(int shardCount, Path sharedDir) throws IOException, InterruptedException {
+		checkShardArguments(0, shardCount);
+		waitForShards(shardCount, sharedDir);
+
+		Path outputFilePath = Paths.get(Main.outputFile);
+		Path errorFilePath = Paths.get(Main.errorFile);
+		Files.deleteIfExists(outputFilePath);
+		Files.deleteIfExists(errorFilePath);
+
+		try (BufferedWriter outputWriter = Main.newOutputWriter(outputFilePath)) {
+			outputWriter.write(Main.getOutputHeaderLine());
+			mergeShardFiles(shardCount, sharedDir, Main.outputFile, outputWriter);
+		}
+
+		boolean anyErrors;
+		try (BufferedWriter errorWriter = Main.newOutputWriter(errorFilePath)) {
+			anyErrors = mergeShardFiles(shardCount, sharedDir, Main.errorFile, errorWriter);
+		}
+		// A single node run only creates the error file when there is something to report
+		if (!anyErrors) {
+			Files.delete(errorFilePath);
+		}
+
+		Main.writeColumnarOutputIfRequested();
+	}
+
+	static boolean isInShard(String variantName, int shardIndex, int shardCount) {
+		return Math.floorMod(variantName.hashCode(), shardCount) == shardIndex;
+	}
+
+	private static void checkShardArguments(int shardIndex, int shardCount) {
+		if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+			throw new IllegalArgumentException(
+				"Shard index must be between 0 and the shard count (exclusive), but received shard " + shardIndex +
+				" of " + shardCount
+			);
+		}
+	}
+
+	private static Path getShardDir(Path sharedDir, int shardIndex, int shardCount) {
+		return sharedDir.resolve("shard-" + shardIndex + "-of-" + shardCount);
+	}
+
+	static <E> List<Integer> getRecordIndicesInShard(
+		List<E> records, Function<E, String> variantNameGetter, Predicate<String> isInShard
+	) {
+		List<Integer> recordIndices = new ArrayList<>();
+		for (int recordIndex = 0; recordIndex < records.size(); recordIndex++) {
+			if (isInShard.test(variantNameGetter.apply(records.get(recordIndex)))) {
+				recordIndices.add(recordIndex);
+			}
+		}
+		return recordIndices;
+	}
+
+	static <E> List<E> getRecords(List<E> records, List<Integer> recordIndices) {
+		return recordIndices.stream().map(records::get).collect(Collectors.toList());
+	}
+
+	private static void writeOrdinalLines(Writer writer, long ordinal, String text) {
+		String[] lines = text.split(Pattern.quote(lineSeparator()), -1);
+		try {
+			// The text always ends with a line separator, so the last element is empty and not a line of its own
+			for (int lineIndex = 0; lineIndex < lines.length - 1; lineIndex++) {
+				writer.write(Long.toString(ordinal));
+				writer.write('\t');
+				writer.write(lines[lineIndex]);
+				writer.write(lineSeparator());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void waitForShards(int shardCount, Path sharedDir) throws InterruptedException {
+		boolean reportedWaiting = false;
+		while (true) {
+			List<Integer> incompleteShards = new ArrayList<>();
+			for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+				if (!Files.exists(getShardDir(sharedDir, shardIndex, shardCount).resolve(completedMarkerFile))) {
+					incompleteShards.add(shardIndex);
+				}
+			}
+
+			if (incompleteShards.isEmpty()) {
+				return;
+			}
+
+			if (!reportedWaiting) {
+				System.out.println("Waiting for shard(s) " + incompleteShards + " of " + shardCount + " in " + sharedDir);
+				reportedWaiting = true;
+			}
+			Thread.sleep(shardPollIntervalMillis);
+		}
+	}
+
+	private static boolean mergeShardFiles(int shardCount, Path sharedDir, String fileName, Writer writer)
+		throws IOException {
+
+		List<BufferedReader> shardReaders = new ArrayList<>();
+		PriorityQueue<ShardLine> shardLines = new PriorityQueue<>(Comparator.comparingLong(ShardLine::getOrdinal));
+		boolean anyLines = false;
+
+		try {
+			for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+				BufferedReader shardReader = Files.newBufferedReader(
+					getShardDir(sharedDir, shardIndex, shardCount).resolve(fileName), StandardCharsets.UTF_8
+				);
+				shardReaders.add(shardReader);
+				ShardLine.readNext(shardReader).ifPresent(shardLines::add);
+			}
+
+			// Each ordinal comes from exactly one shard, so lines sharing an ordinal stay together and in order
+			while (!shardLines.isEmpty()) {
+				ShardLine shardLine = shardLines.poll();
+				writer.write(shardLine.getLine());
+				writer.write(lineSeparator());
+				anyLines = true;
+
+				ShardLine.readNext(shardLine.getShardReader()).ifPresent(shardLines::add);
+			}
+		} finally {
+			for (BufferedReader shardReader : shardReaders) {
+				shardReader.close();
+			}
+		}
+
+		return anyLines;
+	}
+
+	private static class ShardLine {
+		private long ordinal;
+		private String line;
+		private BufferedReader shardReader;
+
+		private ShardLine(long ordinal, String line, BufferedReader shardReader) {
+			this.ordinal = ordinal;
+			this.line = line;
+			this.shardReader = shardReader;
+		}
+
+		static Optional<ShardLine> readNext(BufferedReader shardReader) throws IOException {
+			String ordinalLine = shardReader.readLine();
+			if (ordinalLine == null) {
+				return Optional.empty();
+			}
+
+			int separatorIndex = ordinalLine.indexOf('\t');
+			return Optional.of(new ShardLine(
+				Long.parseLong(ordinalLine.substring(0, separatorIndex)),
+				ordinalLine.substring(separatorIndex + 1),
+				shardReader
+			));
+		}
+
+		long getOrdinal() {
+			return this.ordinal;
+		}
+
+		String getLine() {
+			return this.line;
+		}
+
+		BufferedReader getShardReader() {
+			return this.shardReader;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package org.reactome.curation;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how many heap bytes the parsed records of each type retain, including their annotations, lists and
+ * strings, and what the abridged cosmic record index retains, on generated input files of several sizes.  Each is
+ * measured by how much the used heap after garbage collection grows with each parsed copy of it, so the test JVM
+ * must not be run with -XX:+DisableExplicitGC.  A test fails when the bytes per record of any size exceed the budget
+ * for it, which can be changed with -DvariantAnnotation.footprintBudget.&lt;measured&gt;=&lt;bytes per record&gt;.  What
+ * is measured depends on the collector, the heap region sizes and compressed oops, so the test only runs with the
+ * footprint profile, as mvn test -Pfootprint.
+ */
+public class HeapFootprintTest {
+	private static final String footprintBudgetPropertyPrefix = "variantAnnotation.footprintBudget.";
+
+	private static final int[] datasetRecordCounts = {2_500, 5_000, 10_000};
+	private static final int parsedCopyCount = 4;
+	private static final int maxGcAttempts = 10;
+	private static final long randomSeed = 1;
+
+	private static final String[] yesNoValues = {"yes", "no", "Yes", "No", ""};
+	private static final String[] statusValues = {"Released", "", "ToDo"};
+	private static final String[] releaseVersionValues = {"V70", "V71", "", ""};
+
+	private static final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+	private static final List<Object> parsedCopies = new ArrayList<>();
+
+	@Test
+	public void diseaseGeneRecordsAreWithinBudget() throws IOException {
+		assertWithinBudget(
+			"DiseaseGeneRecord",
+			1536,
+			String.join(
+				"\t",
+				"Protein", "OMIM identifier", "UniProt ID", "Variant name", "Variant ID", "Disease", "Mutation",
+				"GOF/LOF/null", "WT Reactome Pathway", "Selected_Pubmed_PMID", "COSMIC_Pubmed_PMID", "Curator",
+				"Consequence", "NormalReaction", "Comments", "Status", "ReleaseVersion"
+			),
+			(random, recordIndex) -> String.join(
+				"\t",
+				getProtein(random), "OMIM:" + random.nextInt(10_000), "Q" + random.nextInt(10_000),
+				getVariantName(recordIndex), "", random.nextBoolean() ? "cancer" : "cancer,leukemia", "m",
+				"GOF", "R-HSA-1", "123, 456", "", random.nextBoolean() ? "alice" : "bob", "c1,c2", "R-1", "note",
+				pick(random, statusValues), pick(random, releaseVersionValues)
+			),
+			DiseaseGeneRecord::parseDiseaseGeneRecords
+		);
+	}
+
+	@Test
+	public void highPriorityVariantRecordsAreWithinBudget() throws IOException {
+		assertWithinBudget(
+			"HighPriorityVariantRecord",
+			384,
+			String.join(
+				"\t",
+				"Variant name", "Count", "Protein in Reactome", "gene has variants in Reactome",
+				"specific variant in Reactome"
+			),
+			(random, recordIndex) -> String.join(
+				"\t",
+				getVariantName(recordIndex), Integer.toString(1 + random.nextInt(9)),
+				pick(random, yesNoValues), "yes", "no"
+			),
+			HighPriorityVariantRecord::parseHighPriorityVariantRecords
+		);
+	}
+
+	@Test
+	public void abridgedCosmicRecordsAreWithinBudget() throws IOException {
+		assertWithinBudget(
+			"AbridgedCosmicRecord",
+			704,
+			AbridgedCosmicRecord.EXPECTED_HEADER,
+			HeapFootprintTest::getAbridgedCosmicLine,
+			AbridgedCosmicRecord::parseAbridgedCosmicRecords
+		);
+	}
+
+	@Test
+	public void abridgedCosmicRecordIndexIsWithinBudget() throws IOException {
+		assertWithinBudget(
+			"AbridgedCosmicRecordIndex",
+			736,
+			AbridgedCosmicRecord.EXPECTED_HEADER,
+			HeapFootprintTest::getAbridgedCosmicLine,
+			tsvFilePath -> AbridgedCosmicRecordIndex.indexAbridgedCosmicRecords(
+				AbridgedCosmicRecord.parseAbridgedCosmicRecords(tsvFilePath)
+			)
+		);
+	}
+
+	private static void assertWithinBudget(
+		String measured, long defaultBudget, String header, LineGenerator lineGenerator, Parser parser
+	) throws IOException {
+		long budget = Long.getLong(footprintBudgetPropertyPrefix + measured, defaultBudget);
+
+		for (int datasetRecordCount : datasetRecordCounts) {
+			Path datasetFilePath = Files.createTempFile("footprint", ".tsv");
+			try {
+				Files.write(datasetFilePath, getDatasetLines(header, lineGenerator, datasetRecordCount));
+
+				long bytesPerRecord = getRetainedBytes(parser, datasetFilePath.toString()) / datasetRecordCount;
+				assertTrue(
+					measured + " retains " + bytesPerRecord + " bytes per record of " + datasetRecordCount +
+						", over its budget of " + budget,
+					bytesPerRecord <= budget
+				);
+			} finally {
+				Files.delete(datasetFilePath);
+			}
+		}
+	}
+
+	// The same seed gives every dataset the same first lines, so each larger dataset extends the smaller ones
+	private static List<String> getDatasetLines(String header, LineGenerator lineGenerator, int recordCount) {
+		Random random = new Random(randomSeed);
+
+		List<String> datasetLines = new ArrayList<>();
+		datasetLines.add(header);
+		for (int recordIndex = 0; recordIndex < recordCount; recordIndex++) {
+			datasetLines.add(lineGenerator.getLine(random, recordIndex));
+		}
+		return datasetLines;
+	}
+
+	// Every three consecutive abridged cosmic records share a variant name, so the index groups them as it would
+	private static String getAbridgedCosmicLine(Random random, int recordIndex) {
+		return String.join(
+			"\t",
+			getProtein(random), "p.X" + (1 + random.nextInt(999)), getVariantName(recordIndex / 3),
+			"COSV" + (1 + random.nextInt(50_000)), Integer.toString(1000 + random.nextInt(99_000)),
+			pick(random, yesNoValues), pick(random, yesNoValues), pick(random, yesNoValues), pick(random, statusValues),
+			pick(random, releaseVersionValues), "Substitution"
+		);
+	}
+
+	private static String getProtein(Random random) {
+		return "P" + (1 + random.nextInt(60));
+	}
+
+	private static String getVariantName(int variantIndex) {
+		return "P" + (1 + variantIndex % 60) + "_p.V" + variantIndex + "X";
+	}
+
+	private static String pick(Random random, String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	// Measuring how much the heap grows with each further copy of what is parsed leaves out the classes and caches
+	// the first parse brings in, and the median growth leaves out anything the JVM itself frees or keeps meanwhile
+	private static long getRetainedBytes(Parser parser, String tsvFilePath) throws IOException {
+		try {
+			parsedCopies.add(parser.parse(tsvFilePath));
+			long usedHeap = getUsedHeapAfterGc();
+
+			long[] retainedBytes = new long[parsedCopyCount - 1];
+			for (int copy = 0; copy < retainedBytes.length; copy++) {
+				parsedCopies.add(parser.parse(tsvFilePath));
+				long usedHeapWithCopy = getUsedHeapAfterGc();
+
+				retainedBytes[copy] = usedHeapWithCopy - usedHeap;
+				usedHeap = usedHeapWithCopy;
+			}
+			Arrays.sort(retainedBytes);
+
+			return retainedBytes[retainedBytes.length / 2];
+		} finally {
+			parsedCopies.clear();
+		}
+	}
+
+	// Collects until the used heap stops shrinking, as a single request may not reclaim everything
+	private static long getUsedHeapAfterGc() {
+		long usedHeap = Long.MAX_VALUE;
+		for (int gcAttempt = 0; gcAttempt < maxGcAttempts; gcAttempt++) {
+			System.gc();
+			long currentUsedHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+			if (currentUsedHeap >= usedHeap) {
+				break;
+			}
+			usedHeap = currentUsedHeap;
+		}
+		return usedHeap;
+	}
+
+	private interface LineGenerator {
+		String getLine(Random random, int recordIndex);
+	}
+
+	private interface Parser {
+		Object parse(String tsvFilePath) throws IOException;
+	}
+}